@@ -0,0 +1,41 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+/** Synthetic catalogs and carts shared by the benchmarks. */
+final class BenchmarkData {
+    private static final String[] STEMS = {
+            "Amoxicillin", "Ibuprofen", "Paracetamol", "Cetirizine", "Metformin",
+            "Omeprazole", "Losartan", "Amlodipine", "Simvastatin", "Prednisone"
+    };
+
+    private BenchmarkData() {
+    }
+
+    static List<Product> products(int count) {
+        Random random = new Random(42);
+        Icon icon = new ImageIcon(new java.awt.image.BufferedImage(1, 1, java.awt.image.BufferedImage.TYPE_INT_RGB));
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = STEMS[i % STEMS.length] + " " + (5 * (1 + random.nextInt(100))) + "mg #" + i;
+            products.add(new Product(i, name, 5_000 + random.nextInt(30_000), icon, i % 3 == 2, i % 3));
+        }
+        return products;
+    }
+
+    static CartModel cart(List<Product> products, int lines) {
+        Random random = new Random(7);
+        CartModel cart = new CartModel(new PricingEngine());
+        while (cart.size() < Math.min(lines, products.size())) {
+            cart.add(products.get(random.nextInt(products.size())));
+        }
+        return cart;
+    }
+
+    static Color color(int i) {
+        return new Color(0x1E90FF ^ (i * 0x9E3779B1));
+    }
+}
@@ -0,0 +1,45 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** addToCart's CartModel.add and updateCartStatus against carts of increasing size. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CartBenchmark {
+    @Param({"1000", "100000"})
+    int catalogSize;
+
+    @Param({"10", "100", "1000"})
+    int cartSize;
+
+    private CartModel cart;
+    private List<Product> inCart;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        cart = BenchmarkData.cart(BenchmarkData.products(catalogSize), cartSize);
+        inCart = new ArrayList<>();
+        for (int row = 0; row < cart.size(); row++) {
+            inCart.add(cart.product(row));
+        }
+    }
+
+    @Benchmark
+    public void addToCart() {
+        cart.add(inCart.get(next++ % inCart.size()));
+    }
+
+    @Benchmark
+    public String updateCartStatus() {
+        return KioskSystem.cartStatusText(cart);
+    }
+}
@@ -0,0 +1,98 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CartLines against the LinkedHashMap<Product, CartEntry> layout it replaced, for institutional-size
+ * carts: bumping an existing line, adding and removing a line, and taking a snapshot.
+ * Run with -prof gc to compare allocation per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CartLinesBenchmark {
+    @Param({"10", "1000", "10000"})
+    int cartSize;
+
+    private List<Product> products;
+    private Product extra;
+    private CartLines lines;
+    private LinkedHashMap<Product, CartEntry> map;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        products = BenchmarkData.products(cartSize + 1);
+        extra = products.remove(cartSize);
+        lines = new CartLines();
+        map = new LinkedHashMap<>();
+        for (Product product : products) {
+            lines.add(product.sku, 1);
+            map.put(product, new CartEntry(product, 1));
+        }
+    }
+
+    @Benchmark
+    public int bumpLines() {
+        Product product = products.get(next++ % cartSize);
+        return lines.quantity(lines.add(product.sku, 1));
+    }
+
+    @Benchmark
+    public int bumpLinkedHashMap() {
+        Product product = products.get(next++ % cartSize);
+        return ++map.get(product).quantity;
+    }
+
+    @Benchmark
+    public int addRemoveLastLines() {
+        int row = lines.add(extra.sku, 1);
+        lines.removeRow(row);
+        return row;
+    }
+
+    @Benchmark
+    public int addRemoveLastLinkedHashMap() {
+        map.put(extra, new CartEntry(extra, 1));
+        return map.remove(extra).quantity;
+    }
+
+    /** Removes the first row and adds its line back, the worst case: every later row shifts and has its slot repointed. */
+    @Benchmark
+    public int removeFirstLines() {
+        int sku = lines.sku(0);
+        lines.removeRow(0);
+        return lines.add(sku, 1);
+    }
+
+    @Benchmark
+    public int removeFirstLinkedHashMap() {
+        Product first = map.keySet().iterator().next();
+        CartEntry entry = map.remove(first);
+        map.put(first, entry);
+        return entry.quantity;
+    }
+
+    @Benchmark
+    public byte[] snapshotLines() {
+        return lines.snapshot();
+    }
+
+    @Benchmark
+    public Object snapshotLinkedHashMap() {
+        List<CartEntry> copy = new ArrayList<>(map.size());
+        for (Map.Entry<Product, CartEntry> entry : map.entrySet()) {
+            copy.add(new CartEntry(entry.getKey(), entry.getValue().quantity));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,85 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Catalog reads: scanning the price and Rx columns of every SKU, against the same scan over a
+ * List of Product objects, plus a single materialized lookup, and opening the file. Run with
+ * -p catalogSize=1000000 -prof gc for the startup cost and heap of a large catalog.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CatalogBenchmark {
+    @Param({"100000"})
+    int catalogSize;
+
+    private Path file;
+    private CatalogStore catalog;
+    private List<Product> objects;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        objects = BenchmarkData.products(catalogSize);
+        StringBuilder csv = new StringBuilder("name,price,category,rx,icon,color\n");
+        for (Product product : objects) {
+            csv.append(product.name).append(',')
+                    .append(product.priceCents / 100).append('.').append(product.priceCents % 100).append(',')
+                    .append(CatalogStore.CATEGORIES[product.isRx ? CatalogStore.RX : CatalogStore.GENERIC]).append(',')
+                    .append(product.isRx).append(",RX,1E90FF\n");
+        }
+        file = Files.createTempFile("catalog", ".bin");
+        CatalogStore.importCsv(new BufferedReader(new StringReader(csv.toString())), 1, file);
+        catalog = CatalogStore.open(file, (text, color) -> null);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        catalog.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long scanColumns() {
+        long rxTotal = 0;
+        for (int id = 0; id < catalog.size(); id++) {
+            if (catalog.isRx(id)) rxTotal += catalog.priceCents(id);
+        }
+        return rxTotal;
+    }
+
+    @Benchmark
+    public long scanObjects() {
+        long rxTotal = 0;
+        for (int i = 0; i < objects.size(); i++) {
+            Product product = objects.get(i);
+            if (product.isRx) rxTotal += product.priceCents;
+        }
+        return rxTotal;
+    }
+
+    @Benchmark
+    public int open() throws IOException {
+        try (CatalogStore opened = CatalogStore.open(file, (text, color) -> null)) {
+            return opened.size();
+        }
+    }
+
+    @Benchmark
+    public Product lookup() {
+        next = (next + 7919) % catalogSize;
+        return catalog.product(next);
+    }
+}
@@ -0,0 +1,53 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/** Icon generation (the former createSampleIcon) and painting an already cached icon. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class IconBenchmark {
+    @Param({"100", "10000"})
+    int catalogSize;
+
+    private IconCache cache;
+    private IconCache.Key[] keys;
+    private Icon[] icons;
+    private Graphics target;
+    private int next;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        cache = new IconCache(Long.MAX_VALUE);
+        keys = new IconCache.Key[catalogSize];
+        icons = new Icon[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            String text = Integer.toString(i % 100, 36).toUpperCase();
+            keys[i] = new IconCache.Key(text, BenchmarkData.color(i).getRGB(), ProductGrid.ICON_SIZE);
+            icons[i] = cache.icon(text, BenchmarkData.color(i), ProductGrid.ICON_SIZE);
+        }
+        target = new BufferedImage(ProductGrid.ICON_SIZE, ProductGrid.ICON_SIZE, BufferedImage.TYPE_INT_RGB).getGraphics();
+        for (Icon icon : icons) {
+            icon.paintIcon(null, target, 0, 0);
+        }
+        Thread.sleep(catalogSize / 10 + 500); // let the renderer thread fill the cache
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+        return cache.render(keys[next++ % keys.length]);
+    }
+
+    @Benchmark
+    public void paintCached() {
+        icons[next++ % icons.length].paintIcon(null, target, 0, 0);
+    }
+}
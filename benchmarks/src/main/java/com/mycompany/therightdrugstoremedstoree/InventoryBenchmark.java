@@ -0,0 +1,88 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reserving and releasing stock from 64 threads at once: on a handful of popular SKUs, spread over the
+ * whole catalog, and through one lock around a plain array for comparison. The uncontended single-thread
+ * case is the floor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InventoryBenchmark {
+    private static final int HOT_SKUS = 4;
+
+    @Param({"100000"})
+    int catalogSize;
+
+    private InventoryLedger ledger;
+    private long[] locked;
+
+    @State(Scope.Thread)
+    public static class Picker {
+        private int seed = (int) System.nanoTime() | 1;
+
+        int next(int bound) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            return (seed & Integer.MAX_VALUE) % bound;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        ledger = new InventoryLedger(catalogSize, TimeUnit.MINUTES.toNanos(15));
+        locked = new long[catalogSize];
+        for (int sku = 0; sku < catalogSize; sku++) {
+            ledger.setOnHand(sku, 1_000_000);
+            locked[sku] = 1_000_000L << 32;
+        }
+    }
+
+    private int reserveAndRelease(int sku) {
+        int taken = ledger.reserve(sku, 1);
+        ledger.release(sku, taken);
+        return taken;
+    }
+
+    @Benchmark
+    @Threads(64)
+    public int hotSkus(Picker picker) {
+        return reserveAndRelease(picker.next(HOT_SKUS));
+    }
+
+    @Benchmark
+    @Threads(64)
+    public int spreadSkus(Picker picker) {
+        return reserveAndRelease(picker.next(catalogSize));
+    }
+
+    @Benchmark
+    @Threads(64)
+    public int hotSkusLocked(Picker picker) {
+        int sku = picker.next(HOT_SKUS);
+        int taken;
+        synchronized (this) {
+            long word = locked[sku];
+            taken = (int) (word >> 32) - (int) word > 0 ? 1 : 0;
+            locked[sku] = word + taken;
+        }
+        synchronized (this) {
+            locked[sku] -= taken;
+        }
+        return taken;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int uncontended(Picker picker) {
+        return reserveAndRelease(picker.next(HOT_SKUS));
+    }
+}
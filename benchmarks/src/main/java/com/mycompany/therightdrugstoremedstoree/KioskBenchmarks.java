@@ -0,0 +1,24 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH options and writes JSON results to
+ * target/jmh-result.json unless -rf/-rff are given, so runs can be diffed between releases.
+ */
+public class KioskBenchmarks {
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.add("-rf");
+            options.add("json");
+        }
+        if (!options.contains("-rff")) {
+            options.add("-rff");
+            options.add("target/jmh-result.json");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,347 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless synthetic customers for sizing and regression runs.
+ *
+ * Each customer thread owns a {@link KioskSession} and loops through scripted sessions: browse a few
+ * categories, sometimes toggle Senior/PWD, add items, remove some through the cart dialog's path and
+ * place the order on the shared {@link CheckoutPipeline}. Orders and printed receipts go to a scratch
+ * directory unless --journal-dir or -Dkiosk.printer say otherwise. All customers reserve from one
+ * {@link InventoryLedger} that starts with --stock units of every product; at the end the ledger is
+ * checked against the units that were sold. With --remote the sessions live in an in-process
+ * {@link KioskServer} instead and each customer drives its own through a {@link KioskClient} over loopback.
+ * After a warmup it reports throughput, per-step latency percentiles, allocation and GC.
+ *
+ * <pre>java -cp benchmarks/target/benchmarks.jar com.mycompany.therightdrugstoremedstoree.LoadGenerator
+ *     [--customers 8] [--seconds 30] [--warmup 5] [--think-ms 0] [--journal-dir DIR] [--seed 1]
+ *     [--stock 1000000] [--remote]</pre>
+ *
+ * The catalog is the kiosk's default one; point -Dkiosk.catalog.csv at a larger CSV to load test it.
+ */
+public final class LoadGenerator {
+    private static final int PAGE = 12;
+
+    private final LatencyHistogram browse = new LatencyHistogram("browse");
+    private final LatencyHistogram discount = new LatencyHistogram("discount");
+    private final LatencyHistogram add = new LatencyHistogram("add");
+    private final LatencyHistogram remove = new LatencyHistogram("remove");
+    private final LatencyHistogram checkout = new LatencyHistogram("checkout");
+    private final LatencyHistogram session = new LatencyHistogram("session");
+    private final LatencyHistogram[] histograms = {browse, discount, add, remove, checkout, session};
+    private final LongAdder orders = new LongAdder();
+    private final LongAdder failedOrders = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder outOfStock = new LongAdder();
+    private final LongAdder unitsSold = new LongAdder();
+
+    private final CatalogStore catalog;
+    private final PricingEngine pricing = new PricingEngine();
+    private final OrderJournal journal;
+    private final InventoryLedger ledger;
+    private final int stock;
+    private final CheckoutPipeline pipeline;
+    private KioskServer server;
+    private final long thinkMillis;
+    private volatile boolean running = true;
+
+    private LoadGenerator(CatalogStore catalog, OrderJournal journal, int stock, long thinkMillis) {
+        this.catalog = catalog;
+        this.journal = journal;
+        this.ledger = new InventoryLedger(catalog.size(), TimeUnit.MINUTES.toNanos(15));
+        for (int sku = 0; sku < catalog.size(); sku++) {
+            ledger.setOnHand(sku, stock);
+        }
+        this.stock = stock;
+        this.pipeline = new CheckoutPipeline(pricing, journal);
+        this.thinkMillis = thinkMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int customers = 8;
+        int seconds = 30;
+        int warmup = 5;
+        long think = 0;
+        long seed = 1;
+        int stock = 1_000_000;
+        boolean remote = false;
+        Path journalDir = null;
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--customers": customers = Integer.parseInt(value); i++; break;
+                case "--seconds": seconds = Integer.parseInt(value); i++; break;
+                case "--warmup": warmup = Integer.parseInt(value); i++; break;
+                case "--think-ms": think = Long.parseLong(value); i++; break;
+                case "--seed": seed = Long.parseLong(value); i++; break;
+                case "--journal-dir": journalDir = Paths.get(value); i++; break;
+                case "--stock": stock = Integer.parseInt(value); i++; break;
+                case "--remote": remote = true; break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        boolean scratch = journalDir == null;
+        if (scratch) journalDir = Files.createTempDirectory("kiosk-load");
+        if (System.getProperty("kiosk.printer") == null) {
+            System.setProperty("kiosk.printer", journalDir.resolve("printer.out").toString());
+        }
+        try (CatalogStore catalog = CatalogStore.openDefault((text, color) -> null);
+             OrderJournal journal = OrderJournal.open(journalDir, catalog.sourceStamp())) {
+            LoadGenerator generator = new LoadGenerator(catalog, journal, stock, think);
+            if (remote) generator.serve();
+            generator.run(customers, warmup, seconds, seed);
+        } finally {
+            if (scratch) deleteRecursively(journalDir);
+        }
+    }
+
+    private void serve() throws IOException {
+        server = new KioskServer(catalog, pricing, journal, ledger, 0);
+        server.start();
+    }
+
+    private void run(int customers, int warmupSeconds, int seconds, long seed) throws InterruptedException, IOException {
+        System.out.println("Catalog: " + catalog.size() + " products, " + customers
+                + (server != null ? " remote" : "") + " customers, "
+                + warmupSeconds + " s warmup, " + seconds + " s measured");
+        CountDownLatch done = new CountDownLatch(customers);
+        for (int c = 0; c < customers; c++) {
+            long customerSeed = seed * 1_000_003 + c;
+            Thread thread = new Thread(() -> {
+                try {
+                    customer(new Random(customerSeed));
+                } finally {
+                    done.countDown();
+                }
+            }, "customer-" + c);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        LatencyHistogram.Snapshot[] before = new LatencyHistogram.Snapshot[histograms.length];
+        for (int i = 0; i < histograms.length; i++) {
+            before[i] = histograms[i].snapshot();
+        }
+        long ordersBefore = orders.sum();
+        long failedBefore = failedOrders.sum();
+        long busyBefore = busy.sum();
+        long outOfStockBefore = outOfStock.sum();
+        long allocatedBefore = allocatedBytes();
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long start = System.nanoTime();
+
+        TimeUnit.SECONDS.sleep(seconds);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long placed = orders.sum() - ordersBefore;
+        long allocated = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+        LatencyHistogram.Snapshot[] after = new LatencyHistogram.Snapshot[histograms.length];
+        for (int i = 0; i < histograms.length; i++) {
+            after[i] = histograms[i].snapshot().minus(before[i]);
+        }
+        long gcCount = gcCount() - gcCountBefore;
+        long gcMillis = gcMillis() - gcMillisBefore;
+        running = false;
+        done.await(10, TimeUnit.SECONDS);
+        // Closing the server closes the sessions that still hold stock.
+        if (server != null) server.close();
+        pipeline.shutdown();
+
+        System.out.printf("Orders: %d (%.1f/s), failed %d, checkout busy %d, out of stock adds %d%n",
+                placed, placed / elapsed, failedOrders.sum() - failedBefore, busy.sum() - busyBefore,
+                outOfStock.sum() - outOfStockBefore);
+        System.out.printf("%-10s %10s %10s %10s %10s %10s%n", "step", "count", "p50 us", "p99 us", "p99.9 us", "max us");
+        for (int i = 0; i < histograms.length; i++) {
+            LatencyHistogram.Snapshot s = after[i];
+            System.out.printf("%-10s %10d %10.1f %10.1f %10.1f %10.1f%n", histograms[i].name(), s.count,
+                    s.percentile(50) / 1e3, s.percentile(99) / 1e3, s.percentile(99.9) / 1e3, s.max() / 1e3);
+        }
+        if (allocated >= 0) {
+            System.out.printf("Allocation: %.1f MB/s, %d bytes/order%n",
+                    allocated / elapsed / (1024 * 1024), placed > 0 ? allocated / placed : 0);
+        } else {
+            System.out.println("Allocation: not available on this JVM");
+        }
+        System.out.printf("GC: %d collections, %d ms%n", gcCount, gcMillis);
+        checkLedger();
+    }
+
+    /** Every unit that left the shelf was sold, and nothing is still reserved once the customers are gone. */
+    private void checkLedger() {
+        long shelved = 0;
+        long reserved = 0;
+        for (int sku = 0; sku < ledger.size(); sku++) {
+            shelved += stock - ledger.onHand(sku);
+            reserved += ledger.reserved(sku);
+        }
+        System.out.printf("Stock: %d units sold, %d left the shelf, %d still reserved%s%n", unitsSold.sum(),
+                shelved, reserved, shelved == unitsSold.sum() && reserved == 0 ? "" : " - INCONSISTENT");
+    }
+
+    /** One simulated customer: back-to-back sessions until the run ends. */
+    private void customer(Random random) {
+        CartSession kiosk;
+        try {
+            kiosk = server != null
+                    ? KioskClient.connect(server.port(), catalog, pricing)
+                    : new KioskSession(catalog, pricing, journal, ledger, pipeline);
+        } catch (IOException e) {
+            System.err.println("Unable to connect: " + e.getMessage());
+            return;
+        }
+        try {
+            session(kiosk, random);
+        } finally {
+            kiosk.close();
+        }
+    }
+
+    private void session(CartSession kiosk, Random random) {
+        while (running) {
+            long sessionStart = System.nanoTime();
+            List<Product> page = null;
+            int pages = 1 + random.nextInt(3);
+            for (int p = 0; p < pages; p++) {
+                long start = System.nanoTime();
+                List<Product> products = kiosk.browse(random.nextInt(CatalogStore.CATEGORIES.length));
+                if (products.isEmpty()) continue;
+                // The grid only materializes the tiles in view.
+                int first = random.nextInt(Math.max(1, products.size() - PAGE));
+                page = products.subList(first, Math.min(products.size(), first + PAGE));
+                for (Product product : page) {
+                    if (product.priceCents < 0) throw new IllegalStateException();
+                }
+                browse.recordSince(start);
+                think(random);
+            }
+            if (page == null) return;
+
+            if (random.nextInt(10) < 3) {
+                long start = System.nanoTime();
+                kiosk.setDiscountFlags(PricingEngine.discountFlags(random.nextBoolean(), random.nextBoolean()));
+                discount.recordSince(start);
+            }
+
+            int items = 1 + random.nextInt(8);
+            for (int i = 0; i < items; i++) {
+                Product product = page.get(random.nextInt(page.size()));
+                long start = System.nanoTime();
+                CompletableFuture<Integer> added = new CompletableFuture<>();
+                kiosk.addToCart(product, 1, added::complete, Runnable::run);
+                if (added.join() == 0) outOfStock.increment();
+                add.recordSince(start);
+                think(random);
+            }
+
+            int removals = random.nextInt(10) < 4 ? 1 + random.nextInt(2) : 0;
+            for (int i = 0; i < removals && kiosk.cart().size() > 0; i++) {
+                long start = System.nanoTime();
+                kiosk.removeOne(random.nextInt(kiosk.cart().size()));
+                remove.recordSince(start);
+            }
+
+            if (!kiosk.cart().isEmpty() && !placeOrder(kiosk)) return;
+            session.recordSince(sessionStart);
+        }
+    }
+
+    private boolean placeOrder(CartSession kiosk) {
+        long start = System.nanoTime();
+        CheckoutPipeline.Result placed;
+        while (true) {
+            CompletableFuture<CheckoutPipeline.Result> result = new CompletableFuture<>();
+            if (kiosk.placeOrder(result::complete, Runnable::run)) {
+                placed = result.join();
+                if (!CheckoutPipeline.BUSY.equals(placed.error)) break;
+            }
+            busy.increment();
+            if (!running) return false;
+            try {
+                TimeUnit.MILLISECONDS.sleep(1);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        checkout.recordSince(start);
+        if (placed.error != null) {
+            failedOrders.increment();
+        } else {
+            orders.increment();
+            for (CartEntry line : placed.order.lines) {
+                unitsSold.add(line.quantity);
+            }
+        }
+        return true;
+    }
+
+    private void think(Random random) {
+        if (thinkMillis <= 0) return;
+        try {
+            TimeUnit.MILLISECONDS.sleep(thinkMillis / 2 + random.nextInt((int) Math.max(1, thinkMillis)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Bytes allocated by every live thread, or -1 when the JVM cannot tell. */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+        if (!sun.isThreadAllocatedMemorySupported() || !sun.isThreadAllocatedMemoryEnabled()) return -1;
+        long total = 0;
+        for (long bytes : sun.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,45 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the always-on instrumentation: one histogram record, uncontended and with four threads
+ * hammering the same histogram, and the nanoTime pair around an instrumented call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+    private final LatencyHistogram histogram = new LatencyHistogram("bench");
+
+    @State(Scope.Thread)
+    public static class Values {
+        long next = 1;
+    }
+
+    @Benchmark
+    public void record(Values values) {
+        histogram.record(values.next = values.next * 6364136223846793005L + 1442695040888963407L >>> 40);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended(Values values) {
+        histogram.record(values.next = values.next * 6364136223846793005L + 1442695040888963407L >>> 40);
+    }
+
+    @Benchmark
+    public void recordSince() {
+        histogram.recordSince(System.nanoTime());
+    }
+
+    @Benchmark
+    public long snapshotP99() {
+        return histogram.snapshot().percentile(99);
+    }
+}
@@ -0,0 +1,78 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * One product photo, a 4000x3000 JPEG, made into a tile: decoded at full size and scaled as ImageIO.read
+ * would, decoded with subsampling as {@link ProductPhotos} does, and served from the thumbnail cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PhotoBenchmark {
+    private static final long GTIN = 4800001000012L;
+
+    private Path dir;
+    private Path photo;
+    private ProductPhotos photos;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("photos");
+        photo = dir.resolve(Gtin.format(GTIN) + ".jpg");
+        BufferedImage image = new BufferedImage(4000, 3000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            g2.setColor(new Color(random.nextInt(0xFFFFFF)));
+            g2.fillOval(random.nextInt(4000), random.nextInt(3000), 20 + random.nextInt(400), 20 + random.nextInt(400));
+        }
+        g2.dispose();
+        ImageIO.write(image, "jpg", photo.toFile());
+        photos = new ProductPhotos(dir, dir.resolve("thumbnails"), ProductGrid.ICON_SIZE, 0, 1L << 20);
+        photos.thumbnail(GTIN);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public BufferedImage decodeFullSize() throws IOException {
+        BufferedImage source = ImageIO.read(photo.toFile());
+        int size = ProductGrid.ICON_SIZE;
+        BufferedImage thumbnail = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = thumbnail.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(source, 0, 15, size, size * 3 / 4, null);
+        g2.dispose();
+        return thumbnail;
+    }
+
+    @Benchmark
+    public BufferedImage decodeSubsampled() throws IOException {
+        return ProductPhotos.decode(photo, ProductGrid.ICON_SIZE);
+    }
+
+    @Benchmark
+    public BufferedImage cachedThumbnail() throws IOException {
+        return photos.thumbnail(GTIN);
+    }
+}
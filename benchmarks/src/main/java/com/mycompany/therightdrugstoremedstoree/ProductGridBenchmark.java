@@ -0,0 +1,62 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Headless equivalent of refreshProducts: binding a category to the grid, discount toggles and scrolling. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ProductGridBenchmark {
+    @Param({"100", "10000", "100000"})
+    int catalogSize;
+
+    private List<Product> products;
+    private ProductGrid grid;
+    private JScrollPane scroll;
+    private int flags;
+    private int row;
+
+    @Setup
+    public void setUp() {
+        products = BenchmarkData.products(catalogSize);
+        grid = new ProductGrid(p -> { }, new PricingEngine());
+        scroll = new JScrollPane(grid);
+        scroll.setSize(1000, 520);
+        grid.setProducts(products);
+        layout();
+    }
+
+    private void layout() {
+        scroll.doLayout();
+        scroll.getViewport().doLayout();
+        grid.doLayout();
+    }
+
+    @Benchmark
+    public int showCategory() {
+        grid.setProducts(products);
+        layout();
+        return grid.getComponentCount();
+    }
+
+    @Benchmark
+    public void toggleDiscount() {
+        flags ^= PricingEngine.SENIOR;
+        grid.setDiscountFlags(flags);
+    }
+
+    @Benchmark
+    public void scrollOneRow() {
+        int rows = (products.size() + ProductGrid.COLUMNS - 1) / ProductGrid.COLUMNS;
+        row = (row + 1) % Math.max(1, rows - 2);
+        scroll.getViewport().setViewPosition(new Point(0, row * (ProductGrid.TILE_HEIGHT + ProductGrid.GAP)));
+    }
+}
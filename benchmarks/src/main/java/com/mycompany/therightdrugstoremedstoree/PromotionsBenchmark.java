@@ -0,0 +1,93 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Promotions: compiling the price table for the whole catalog on the fork/join pool, and pricing a
+ * 50-line cart against it, with and without promotions in play.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PromotionsBenchmark {
+    private static final String RULES = "seniorPwd,,20,,,\n"
+            + "vatExempt,,12,,,\n"
+            + "percentOff,category:Generic,10,,,false\n"
+            + "percentOff,category:Rx,5,,,true\n"
+            + "buyGet,category:Generic,,2,1,false\n"
+            + "percentOff,product:Ibuprofen 200mg #1,15,,,false\n"
+            + "buyGet,product:Paracetamol 500mg #2,,1,1,false\n";
+
+    @Param({"100000"})
+    int catalogSize;
+
+    private Path file;
+    private CatalogStore catalog;
+    private List<Promotions.Rule> rules;
+    private PriceTable promoted;
+    private final PriceTable.Quote quote = new PriceTable.Quote();
+    private Product[] cart;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Product> objects = BenchmarkData.products(catalogSize);
+        StringBuilder csv = new StringBuilder("name,price,category,rx,icon,color\n");
+        for (Product product : objects) {
+            csv.append(product.name).append(',')
+                    .append(product.priceCents / 100).append('.').append(product.priceCents % 100).append(',')
+                    .append(CatalogStore.CATEGORIES[product.isRx ? CatalogStore.RX : CatalogStore.GENERIC]).append(',')
+                    .append(product.isRx).append(",RX,1E90FF\n");
+        }
+        file = Files.createTempFile("catalog", ".bin");
+        CatalogStore.importCsv(new BufferedReader(new StringReader(csv.toString())), 1, file);
+        catalog = CatalogStore.open(file, (text, color) -> null);
+        rules = Promotions.parse(new BufferedReader(new StringReader(RULES)));
+        promoted = PriceTable.compile(rules, catalog);
+        cart = new Product[50];
+        for (int i = 0; i < cart.length; i++) {
+            cart[i] = catalog.product((i * 7919) % catalogSize);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        catalog.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public PriceTable compile() {
+        return PriceTable.compile(rules, catalog);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long priceCartDefault() {
+        return price(PriceTable.DEFAULT);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long priceCartPromoted() {
+        return price(promoted);
+    }
+
+    private long price(PriceTable prices) {
+        prices.begin(quote, PricingEngine.SENIOR);
+        for (int i = 0; i < cart.length; i++) {
+            prices.addLine(quote, cart[i], 1 + (i & 3));
+        }
+        return quote.total;
+    }
+}
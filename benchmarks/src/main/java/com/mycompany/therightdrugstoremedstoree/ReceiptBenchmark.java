@@ -0,0 +1,68 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Receipt generation from showReceiptDialog, streamed to a channel that discards the bytes. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReceiptBenchmark {
+    @Param({"1000", "100000"})
+    int catalogSize;
+
+    @Param({"10", "100", "1000"})
+    int cartSize;
+
+    private List<CartEntry> lines;
+    private final PricingEngine pricing = new PricingEngine();
+    private final ReceiptWriter text = new ReceiptWriter(ReceiptWriter.Format.TEXT);
+    private final ReceiptWriter escPos = new ReceiptWriter(ReceiptWriter.Format.ESC_POS);
+    private final DiscardingChannel sink = new DiscardingChannel();
+
+    @Setup
+    public void setUp() {
+        lines = CheckoutPipeline.Order.snapshot(BenchmarkData.cart(BenchmarkData.products(catalogSize), cartSize), null).lines;
+    }
+
+    @Benchmark
+    public long textReceipt() throws IOException {
+        text.write(lines, pricing.table(), PricingEngine.SENIOR, sink);
+        return sink.written;
+    }
+
+    @Benchmark
+    public long escPosReceipt() throws IOException {
+        escPos.write(lines, pricing.table(), PricingEngine.SENIOR, sink);
+        return sink.written;
+    }
+
+    static final class DiscardingChannel implements WritableByteChannel {
+        long written;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            written += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Barcode scans: resolving a GTIN through the catalog's mapped GTIN table against a boxed HashMap built
+ * at startup, and parsing one scanner burst (13 digits and Enter) into a GTIN.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScannerBenchmark {
+    @Param({"100000"})
+    int catalogSize;
+
+    private Path file;
+    private CatalogStore catalog;
+    private Map<Long, Integer> boxed;
+    private long[] gtins;
+    private String[] codes;
+    private ScanParser parser;
+    private long scanned;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Product> objects = BenchmarkData.products(catalogSize);
+        StringBuilder csv = new StringBuilder("name,price,category,rx,icon,color,gtin\n");
+        for (Product product : objects) {
+            csv.append(product.name).append(',')
+                    .append(product.priceCents / 100).append('.').append(product.priceCents % 100).append(',')
+                    .append(CatalogStore.CATEGORIES[product.isRx ? CatalogStore.RX : CatalogStore.GENERIC]).append(',')
+                    .append(product.isRx).append(",RX,1E90FF,")
+                    .append(Gtin.withCheckDigit(String.format("48%010d", product.sku * 7L))).append('\n');
+        }
+        file = Files.createTempFile("catalog", ".bin");
+        CatalogStore.importCsv(new BufferedReader(new StringReader(csv.toString())), 1, file);
+        catalog = CatalogStore.open(file, (text, color) -> null);
+
+        boxed = new HashMap<>();
+        gtins = new long[1024];
+        codes = new String[gtins.length];
+        for (int id = 0; id < catalog.size(); id++) {
+            boxed.put(catalog.gtin(id), id);
+        }
+        for (int i = 0; i < gtins.length; i++) {
+            gtins[i] = catalog.gtin((int) ((i * 7919L) % catalog.size()));
+            codes[i] = Gtin.format(gtins[i]);
+        }
+        parser = new ScanParser(new ScanParser.Output() {
+            @Override
+            public void typed(CharSequence chars) {
+            }
+
+            @Override
+            public void scanned(long gtin) {
+                scanned = gtin;
+            }
+        }, TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        catalog.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int lookupGtinTable() {
+        return catalog.findGtin(gtins[next++ & (gtins.length - 1)]);
+    }
+
+    @Benchmark
+    public Integer lookupGtinHashMap() {
+        return boxed.get(gtins[next++ & (gtins.length - 1)]);
+    }
+
+    @Benchmark
+    public long parseScan() {
+        String code = codes[next++ & (codes.length - 1)];
+        long nanos = 0;
+        for (int i = 0; i < code.length(); i++) {
+            parser.key(code.charAt(i), nanos += 1_000_000);
+        }
+        parser.key('\n', nanos + 1_000_000);
+        return scanned;
+    }
+}
@@ -0,0 +1,62 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One as-you-type query against a 100k-SKU index, from single letters, which match most of the
+ * catalog, through word prefixes and substrings to a misspelling that needs the fuzzy fallback. One and
+ * two letter queries are measured as the index serves them after their first time, from kept results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+    @Param({"100000"})
+    int catalogSize;
+
+    @Param({"p", "pa", "para", "250mg", "cetam", "paracetmol"})
+    String query;
+
+    private Path file;
+    private CatalogStore catalog;
+    private ProductSearchIndex index;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException, ExecutionException {
+        StringBuilder csv = new StringBuilder("name,price,category,rx,icon,color\n");
+        for (Product product : BenchmarkData.products(catalogSize)) {
+            csv.append(product.name).append(",1.00,")
+                    .append(CatalogStore.CATEGORIES[product.isRx ? CatalogStore.RX : CatalogStore.GENERIC]).append(',')
+                    .append(product.isRx).append(",RX,1E90FF\n");
+        }
+        file = Files.createTempFile("catalog", ".bin");
+        CatalogStore.importCsv(new BufferedReader(new StringReader(csv.toString())), 1, file);
+        catalog = CatalogStore.open(file, (text, color) -> null);
+        index = new ProductSearchIndex();
+        index.build(catalog);
+        index.export().get(); // waits for the build on the search thread
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        catalog.close();
+        Files.deleteIfExists(file);
+    }
+
+    /** Called directly rather than through search(), so the time is the query alone without thread handoffs. */
+    @Benchmark
+    public int[] search() {
+        return index.query(query, 0);
+    }
+}
@@ -0,0 +1,118 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads HID barcode scanners, which type like a keyboard, ahead of whatever component has the focus.
+ * Typed keys go through a {@link ScanParser}; digits that were not a scan are re-dispatched to the
+ * component they were typed into, and scans are queued on a {@link ScanBatcher} that is flushed
+ * {@value #BATCH_MILLIS} ms after the first scan of a batch, with a toast rather than a dialog so the
+ * next scan is never blocked. The key gap that still counts as a scan is -Dkiosk.scanner.maxGapMs
+ * (50 by default). Lives on the EDT.
+ */
+final class BarcodeScanner implements KeyEventDispatcher, ScanParser.Output {
+    private static final int BATCH_MILLIS = 50;
+
+    private final ScanParser parser;
+    private final ScanBatcher batcher;
+    private final Toast toast;
+    private final Timer idleTimer;
+    private final Timer flushTimer;
+    private Component target;
+    private boolean swallowEnter;
+
+    BarcodeScanner(ScanBatcher batcher, Toast toast) {
+        long maxGapMillis = Long.getLong("kiosk.scanner.maxGapMs", 50);
+        this.parser = new ScanParser(this, TimeUnit.MILLISECONDS.toNanos(maxGapMillis));
+        this.batcher = batcher;
+        this.toast = toast;
+        // Key event times are wall-clock milliseconds, so the idle check uses the same clock.
+        idleTimer = new Timer((int) maxGapMillis + 1,
+                e -> parser.idle(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())));
+        idleTimer.setRepeats(false);
+        flushTimer = new Timer(BATCH_MILLIS, e -> flush());
+        flushTimer.setRepeats(false);
+    }
+
+    void install() {
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(this);
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent e) {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(e.getWhen());
+        switch (e.getID()) {
+            case KeyEvent.KEY_TYPED: {
+                char ch = e.getKeyChar();
+                if (ch == '\n') return swallowEnter;
+                if (!isDigit(ch) && !parser.isHolding()) return false;
+                target = e.getComponent();
+                if (!parser.key(ch, nanos)) return false;
+                idleTimer.restart();
+                return true;
+            }
+            case KeyEvent.KEY_PRESSED:
+                // Enter acts on KEY_PRESSED, so a scan is completed here and the rest of its Enter swallowed.
+                if (e.getKeyCode() == KeyEvent.VK_ENTER) {
+                    swallowEnter = parser.isHolding() && parser.key('\n', nanos);
+                    return swallowEnter;
+                }
+                // Keys such as Backspace act on the text the held digits belong to.
+                if (parser.isHolding() && !isDigit(e.getKeyChar()) && !isModifier(e.getKeyCode())) parser.release();
+                return false;
+            case KeyEvent.KEY_RELEASED:
+                if (e.getKeyCode() != KeyEvent.VK_ENTER || !swallowEnter) return false;
+                swallowEnter = false;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isModifier(int keyCode) {
+        return keyCode == KeyEvent.VK_SHIFT || keyCode == KeyEvent.VK_CONTROL || keyCode == KeyEvent.VK_ALT
+                || keyCode == KeyEvent.VK_META || keyCode == KeyEvent.VK_ALT_GRAPH;
+    }
+
+    @Override
+    public void typed(CharSequence chars) {
+        if (target == null || !target.isShowing()) return;
+        KeyboardFocusManager focus = KeyboardFocusManager.getCurrentKeyboardFocusManager();
+        long when = System.currentTimeMillis();
+        for (int i = 0; i < chars.length(); i++) {
+            focus.redispatchEvent(target,
+                    new KeyEvent(target, KeyEvent.KEY_TYPED, when, 0, KeyEvent.VK_UNDEFINED, chars.charAt(i)));
+        }
+    }
+
+    @Override
+    public void scanned(long gtin) {
+        if (gtin < 0 || !batcher.scanned(gtin)) {
+            Toolkit.getDefaultToolkit().beep();
+            toast.show(gtin < 0 ? "Barcode not read, please scan again" : "Unknown product, please ask the pharmacist");
+            return;
+        }
+        if (!flushTimer.isRunning()) flushTimer.start();
+    }
+
+    private void flush() {
+        batcher.flush(this::flushed, SwingUtilities::invokeLater);
+    }
+
+    private void flushed(ScanBatcher.Flushed batch) {
+        if (batch.outOfStock != null) {
+            Toolkit.getDefaultToolkit().beep();
+            toast.show("Sorry, " + batch.outOfStock.name + " is out of stock.");
+            return;
+        }
+        if (batch.units == 0) return;
+        toast.show(batch.units == 1 ? batch.lastProduct.name + " added to cart!" : batch.units + " items added to cart!");
+    }
+}
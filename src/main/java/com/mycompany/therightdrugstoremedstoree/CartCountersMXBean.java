@@ -0,0 +1,12 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+/** JMX view of the cart mutation counters kept by {@link KioskMetrics}. */
+public interface CartCountersMXBean {
+    long getLinesAdded();
+
+    long getQuantityChanges();
+
+    long getLinesRemoved();
+
+    long getClears();
+}
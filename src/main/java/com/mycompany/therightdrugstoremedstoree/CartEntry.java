@@ -0,0 +1,11 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+class CartEntry {
+    Product product;
+    int quantity;
+
+    CartEntry(Product product, int quantity) {
+        this.product = product;
+        this.quantity = quantity;
+    }
+}
@@ -0,0 +1,212 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.util.Arrays;
+
+/**
+ * Cart lines as primitive columns: sku and quantity per row, rows in insertion order, plus an
+ * open-addressing table from sku to row. Nothing is allocated while adding, changing or removing lines
+ * unless the arrays have to grow.
+ *
+ * Rows stay dense so a table model can address them directly; removing a row shifts the rows after it,
+ * like {@link java.util.ArrayList#remove(int)}, and repoints only their table entries, so the cart keeps
+ * the order the customer added things in.
+ */
+final class CartLines {
+    private static final int FREE = -1;
+    private static final byte SNAPSHOT_VERSION = 1;
+
+    private int[] skus;
+    private int[] quantities;
+    private int size;
+    private int[] slots; // row index, or FREE
+    private int mask;
+
+    CartLines() {
+        this(16);
+    }
+
+    CartLines(int expectedLines) {
+        int rows = Math.max(4, expectedLines);
+        skus = new int[rows];
+        quantities = new int[rows];
+        int capacity = Integer.highestOneBit(rows * 2 - 1) << 1;
+        slots = new int[capacity];
+        Arrays.fill(slots, FREE);
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int sku(int row) {
+        checkRow(row);
+        return skus[row];
+    }
+
+    int quantity(int row) {
+        checkRow(row);
+        return quantities[row];
+    }
+
+    /** Row of {@code sku}, or -1 if it is not in the cart. */
+    int row(int sku) {
+        int row;
+        for (int slot = hash(sku) & mask; (row = slots[slot]) != FREE; slot = (slot + 1) & mask) {
+            if (skus[row] == sku) return row;
+        }
+        return -1;
+    }
+
+    /** Adds {@code quantity} units of {@code sku}, appending a row for a new sku, and returns the row. */
+    int add(int sku, int quantity) {
+        int row = row(sku);
+        if (row >= 0) {
+            quantities[row] += quantity;
+            return row;
+        }
+        if (size == skus.length) {
+            skus = Arrays.copyOf(skus, size * 2);
+            quantities = Arrays.copyOf(quantities, size * 2);
+        }
+        if ((size + 1) * 2 > slots.length) rehash(slots.length * 2);
+        row = size++;
+        skus[row] = sku;
+        quantities[row] = quantity;
+        insertSlot(row);
+        return row;
+    }
+
+    void setQuantity(int row, int quantity) {
+        checkRow(row);
+        quantities[row] = quantity;
+    }
+
+    /** Sets the quantity of {@code sku}, adding or removing its row as needed. */
+    void set(int sku, int quantity) {
+        int row = row(sku);
+        if (quantity <= 0) {
+            if (row >= 0) removeRow(row);
+        } else if (row >= 0) {
+            quantities[row] = quantity;
+        } else {
+            add(sku, quantity);
+        }
+    }
+
+    void removeRow(int row) {
+        checkRow(row);
+        deleteSlot(row);
+        for (int later = row + 1; later < size; later++) {
+            slots[slotOf(later)] = later - 1;
+        }
+        int moved = size - row - 1;
+        System.arraycopy(skus, row + 1, skus, row, moved);
+        System.arraycopy(quantities, row + 1, quantities, row, moved);
+        size--;
+    }
+
+    void clear() {
+        if (size == 0) return;
+        Arrays.fill(slots, FREE);
+        size = 0;
+    }
+
+    /**
+     * Compact copy of the lines for session handoff and crash recovery: a version byte, the line count
+     * and then sku, quantity per line, all as unsigned varints.
+     */
+    byte[] snapshot() {
+        byte[] out = new byte[1 + 5 + size * 10];
+        out[0] = SNAPSHOT_VERSION;
+        int pos = writeVarint(out, 1, size);
+        for (int row = 0; row < size; row++) {
+            pos = writeVarint(out, pos, skus[row]);
+            pos = writeVarint(out, pos, quantities[row]);
+        }
+        return Arrays.copyOf(out, pos);
+    }
+
+    /** Replaces the lines with those of a {@link #snapshot}. */
+    void restore(byte[] snapshot) {
+        if (snapshot.length == 0 || snapshot[0] != SNAPSHOT_VERSION) {
+            throw new IllegalArgumentException("Unsupported cart snapshot");
+        }
+        clear();
+        int[] pos = {1};
+        int lines = readVarint(snapshot, pos);
+        for (int i = 0; i < lines; i++) {
+            int sku = readVarint(snapshot, pos);
+            int quantity = readVarint(snapshot, pos);
+            if (quantity > 0) add(sku, quantity);
+        }
+    }
+
+    private static int writeVarint(byte[] out, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int readVarint(byte[] in, int[] pos) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (pos[0] >= in.length) throw new IllegalArgumentException("Truncated cart snapshot");
+            byte b = in[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed cart snapshot");
+    }
+
+    private void insertSlot(int row) {
+        int slot = hash(skus[row]) & mask;
+        while (slots[slot] != FREE) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = row;
+    }
+
+    private int slotOf(int row) {
+        int slot = hash(skus[row]) & mask;
+        while (slots[slot] != row) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Linear-probing delete by shifting later entries of the probe run back, so no tombstones are left. */
+    private void deleteSlot(int row) {
+        int hole = slotOf(row);
+        for (int next = (hole + 1) & mask; slots[next] != FREE; next = (next + 1) & mask) {
+            int home = hash(skus[slots[next]]) & mask;
+            // Move the entry back if its home slot is not cyclically within (hole, next].
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = slots[next];
+                hole = next;
+            }
+        }
+        slots[hole] = FREE;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, FREE);
+        mask = capacity - 1;
+        for (int row = 0; row < size; row++) {
+            insertSlot(row);
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("Row: " + row);
+    }
+
+    static int hash(int sku) {
+        int h = sku * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,223 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * The kiosk cart: ordered lines plus running item count and totals that are adjusted on every mutation
+ * instead of being recomputed. Listeners are told exactly which row changed.
+ *
+ * Lines are kept in a {@link CartLines} keyed by sku, with the products alongside by row, so adding and
+ * removing units allocates nothing. The cart prices everything with one {@link PriceTable} until
+ * {@link #reprice} picks up the engine's current one, so its lines and totals never mix promotions.
+ */
+class CartModel {
+    static final int INSERTED = 0;
+    static final int UPDATED = 1;
+    static final int DELETED = 2;
+    static final int CLEARED = 3;
+    static final int REPRICED = 4;
+    static final int RESTORED = 5;
+
+    interface Listener {
+        /**
+         * {@code row}, {@code product} and {@code quantity} describe the affected line (quantity is 0 once
+         * it is deleted), or are -1, null and 0 for {@link #CLEARED}, {@link #REPRICED} and {@link #RESTORED}.
+         */
+        void cartChanged(int type, int row, Product product, int quantity);
+    }
+
+    private final PricingEngine pricing;
+    private PriceTable prices;
+    private final CartLines lines = new CartLines();
+    private Product[] products = new Product[16];
+    private final List<Listener> listeners = new ArrayList<>();
+    private int discountFlags;
+    private int itemCount;
+    private int rxLines;
+    private long listTotal;
+    private long total;
+
+    CartModel(PricingEngine pricing) {
+        this.pricing = pricing;
+        this.prices = pricing.table();
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /** Adds one unit of {@code product} and returns its row. */
+    int add(Product product) {
+        return add(product, 1);
+    }
+
+    /** Adds {@code units} of {@code product} as one change, e.g. a batch of scans, and returns its row. */
+    int add(Product product, int units) {
+        if (units <= 0) throw new IllegalArgumentException("Units: " + units);
+        int row = lines.add(product.sku, units);
+        int quantity = lines.quantity(row);
+        if (quantity == units) {
+            if (row == products.length) products = Arrays.copyOf(products, row * 2);
+            products[row] = product;
+            if (product.isRx) rxLines++;
+        }
+        itemCount += units;
+        listTotal += product.priceCents * units;
+        total += prices.lineTotal(product, quantity, discountFlags) - prices.lineTotal(product, quantity - units, discountFlags);
+        fire(quantity == units ? INSERTED : UPDATED, row, product, quantity);
+        return row;
+    }
+
+    /** Removes one unit from the line at {@code row}, dropping the line when it reaches zero. */
+    void decrement(int row) {
+        removeAt(row, 1);
+    }
+
+    /** Removes up to {@code quantity} units of {@code product}, e.g. once an order for them was placed. */
+    void remove(Product product, int quantity) {
+        int row = lines.row(product.sku);
+        if (row >= 0) removeAt(row, quantity);
+    }
+
+    /** The row holding {@code product}, or -1. */
+    int row(Product product) {
+        return lines.row(product.sku);
+    }
+
+    private void removeAt(int row, int quantity) {
+        Product product = products[row];
+        int current = lines.quantity(row);
+        int removed = Math.min(quantity, current);
+        itemCount -= removed;
+        listTotal -= product.priceCents * removed;
+        total -= prices.lineTotal(product, current, discountFlags) - prices.lineTotal(product, current - removed, discountFlags);
+        if (current > removed) {
+            lines.setQuantity(row, current - removed);
+            fire(UPDATED, row, product, current - removed);
+        } else {
+            lines.removeRow(row);
+            System.arraycopy(products, row + 1, products, row, lines.size() - row);
+            products[lines.size()] = null;
+            if (product.isRx) rxLines--;
+            fire(DELETED, row, product, 0);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(products, 0, lines.size(), null);
+        lines.clear();
+        itemCount = 0;
+        rxLines = 0;
+        listTotal = 0;
+        total = 0;
+        fire(CLEARED, -1, null, 0);
+    }
+
+    /** Switches the Senior/PWD flags; this and {@link #reprice} are the only operations that walk every line. */
+    void setDiscountFlags(int flags) {
+        if (flags == discountFlags) return;
+        discountFlags = flags;
+        repriceLines();
+    }
+
+    /** Takes the pricing engine's current table, e.g. after the promotions changed. */
+    void reprice() {
+        PriceTable current = pricing.table();
+        if (current == prices) return;
+        prices = current;
+        repriceLines();
+    }
+
+    private void repriceLines() {
+        total = 0;
+        for (int row = 0; row < lines.size(); row++) {
+            total += prices.lineTotal(products[row], lines.quantity(row), discountFlags);
+        }
+        fire(REPRICED, -1, null, 0);
+    }
+
+    /** The lines as a {@link CartLines#snapshot}; the discount flags are not included. */
+    byte[] snapshot() {
+        return lines.snapshot();
+    }
+
+    /**
+     * Replaces the cart with the lines of a snapshot. {@code catalog} resolves skus; lines whose sku it
+     * returns null for are dropped.
+     */
+    void restore(byte[] snapshot, IntFunction<Product> catalog) {
+        CartLines restored = new CartLines();
+        restored.restore(snapshot);
+        Arrays.fill(products, 0, lines.size(), null);
+        lines.clear();
+        itemCount = 0;
+        rxLines = 0;
+        listTotal = 0;
+        total = 0;
+        for (int i = 0; i < restored.size(); i++) {
+            Product product = catalog.apply(restored.sku(i));
+            if (product == null) continue;
+            int quantity = restored.quantity(i);
+            int row = lines.add(product.sku, quantity);
+            if (row == products.length) products = Arrays.copyOf(products, row * 2);
+            products[row] = product;
+            if (product.isRx) rxLines++;
+            itemCount += quantity;
+            listTotal += product.priceCents * quantity;
+            total += prices.lineTotal(product, quantity, discountFlags);
+        }
+        fire(RESTORED, -1, null, 0);
+    }
+
+    int discountFlags() {
+        return discountFlags;
+    }
+
+    boolean isEmpty() {
+        return lines.size() == 0;
+    }
+
+    int size() {
+        return lines.size();
+    }
+
+    Product product(int row) {
+        if (row < 0 || row >= lines.size()) throw new IndexOutOfBoundsException("Row: " + row);
+        return products[row];
+    }
+
+    int quantity(int row) {
+        return lines.quantity(row);
+    }
+
+    int itemCount() {
+        return itemCount;
+    }
+
+    boolean hasRx() {
+        return rxLines > 0;
+    }
+
+    long listTotal() {
+        return listTotal;
+    }
+
+    long total() {
+        return total;
+    }
+
+    long unitPrice(int row) {
+        return prices.unitPrice(product(row), discountFlags);
+    }
+
+    long lineTotal(int row) {
+        return prices.lineTotal(product(row), lines.quantity(row), discountFlags);
+    }
+
+    private void fire(int type, int row, Product product, int quantity) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).cartChanged(type, row, product, quantity);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * What the kiosk screen does with a customer's session: a {@link KioskSession} in this process, or a
+ * {@link KioskClient} whose session lives in a {@link KioskServer}. Either way {@link #cart} is what the
+ * screen shows, and it only changes on the thread that drives the session.
+ */
+interface CartSession {
+    CartModel cart();
+
+    List<Product> browse(int category);
+
+    void setDiscountFlags(int flags);
+
+    /** Re-prices the cart after the pricing engine's promotions changed. */
+    void reprice();
+
+    /**
+     * Adds as many of {@code units} as are in stock as one cart change. {@code onAdded} runs on
+     * {@code callbacks} once they are in the cart, with how many that was; 0 leaves the cart alone.
+     */
+    void addToCart(Product product, int units, IntConsumer onAdded, Executor callbacks);
+
+    /** Removes one unit from a cart row, as the cart dialog's Remove button does. */
+    void removeOne(int row);
+
+    /**
+     * Places the cart as an order. {@code onDone} runs on {@code callbacks} once the ordered lines are out
+     * of the cart. Returns false without doing anything when the cart is empty, checkout is busy or an
+     * order from this session is still in flight, since its lines are still in the cart.
+     */
+    boolean placeOrder(Consumer<CheckoutPipeline.Result> onDone, Executor callbacks);
+
+    /** True from a successful {@link #placeOrder} until its result has been delivered. */
+    boolean isPlacingOrder();
+
+    /** Gives back the session's reservations; the session is not used afterwards. */
+    void close();
+}
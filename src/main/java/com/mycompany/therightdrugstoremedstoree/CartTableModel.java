@@ -0,0 +1,70 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import javax.swing.table.AbstractTableModel;
+
+/** Live view of a {@link CartModel} for the cart dialog; forwards only the rows that changed. */
+class CartTableModel extends AbstractTableModel implements CartModel.Listener {
+    static final int REMOVE_COLUMN = 4;
+    private static final String[] COLUMN_NAMES = {"Product", "Unit Price", "Quantity", "Subtotal", "Remove"};
+
+    private final CartModel cart;
+
+    CartTableModel(CartModel cart) {
+        this.cart = cart;
+        cart.addListener(this);
+    }
+
+    @Override
+    public void cartChanged(int type, int row, Product product, int quantity) {
+        switch (type) {
+            case CartModel.INSERTED:
+                fireTableRowsInserted(row, row);
+                break;
+            case CartModel.UPDATED:
+                fireTableRowsUpdated(row, row);
+                break;
+            case CartModel.DELETED:
+                fireTableRowsDeleted(row, row);
+                break;
+            default:
+                fireTableDataChanged();
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return cart.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return column == REMOVE_COLUMN;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Product product = cart.product(row);
+        switch (column) {
+            case 0:
+                return product.name;
+            case 1:
+                return Money.format(cart.unitPrice(row));
+            case 2:
+                return cart.quantity(row);
+            case 3:
+                return Money.format(cart.lineTotal(row));
+            default:
+                return "Remove";
+        }
+    }
+}
@@ -0,0 +1,560 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only product catalog backed by a memory-mapped, column-oriented binary file.
+ *
+ * The binary file is built once from a CSV ({@code name,price,category,rx,icon,color[,gtin[,stock]]}).
+ * Products are identified by a dense int id (their row, grouped by category) and every attribute is its own
+ * column: prices and GTINs as {@code long}s, Rx as a bitset, the icon color and the stock at export time as
+ * ints and the category as a byte.
+ * Names and icon labels are interned into one string table and referenced by index. The file also holds an
+ * open-addressing table from GTIN to id, so a barcode resolves with a probe or two and nothing is built
+ * at startup. Opening the store
+ * only reads the header; {@link Product} objects are created when a category view or a lookup asks for a
+ * given row, so startup cost and heap do not grow with the catalog.
+ */
+class CatalogStore implements Closeable {
+    static final int BRANDED = 0;
+    static final int GENERIC = 1;
+    static final int RX = 2;
+    static final String[] CATEGORIES = {"Branded", "Generic", "Rx"};
+
+    private static final int MAGIC = 0x4B434154; // "KCAT"
+    private static final int VERSION = 4;
+    // magic, version, source stamp, row count, (start, length) per category, string count, GTIN slots
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + CATEGORIES.length * 8 + 4 + 4;
+    private static final int MATERIALIZED_CACHE_SIZE = 512;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int[] categoryStart = new int[CATEGORIES.length];
+    private final int[] categoryLength = new int[CATEGORIES.length];
+    private final LongBuffer prices;
+    private final LongBuffer gtins;
+    private final long[] rxBits;
+    private final IntBuffer nameRefs;
+    private final IntBuffer iconRefs;
+    private final IntBuffer colors;
+    private final IntBuffer stocks;
+    private final int categoriesOffset;
+    private final IntBuffer gtinSlots;
+    private final int gtinMask;
+    private final IntBuffer stringOffsets;
+    private final int stringDataOffset;
+    private final BiFunction<String, Color, Icon> iconFactory;
+    private volatile ProductPhotos photos;
+    private final Map<Integer, Product> materialized = new LinkedHashMap<Integer, Product>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Product> eldest) {
+            return size() > MATERIALIZED_CACHE_SIZE;
+        }
+    };
+
+    private CatalogStore(FileChannel channel, BiFunction<String, Color, Icon> iconFactory) throws IOException {
+        this.channel = channel;
+        this.iconFactory = iconFactory;
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a catalog file (or unsupported version)");
+        }
+        this.count = buffer.getInt(16);
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            categoryStart[c] = buffer.getInt(20 + c * 8);
+            categoryLength[c] = buffer.getInt(24 + c * 8);
+        }
+        int strings = buffer.getInt(20 + CATEGORIES.length * 8);
+        int slots = buffer.getInt(24 + CATEGORIES.length * 8);
+        if (Integer.bitCount(slots) != 1) throw new IOException("Corrupt catalog file");
+
+        Layout layout = new Layout(count, strings, slots);
+        if (buffer.limit() < layout.stringData) throw new IOException("Truncated catalog file");
+        this.prices = slice(layout.prices).asLongBuffer();
+        this.gtins = slice(layout.gtins).asLongBuffer();
+        this.rxBits = new long[rxWords(count)];
+        slice(layout.rxBits).asLongBuffer().get(rxBits);
+        this.nameRefs = slice(layout.nameRefs).asIntBuffer();
+        this.iconRefs = slice(layout.iconRefs).asIntBuffer();
+        this.colors = slice(layout.colors).asIntBuffer();
+        this.stocks = slice(layout.stocks).asIntBuffer();
+        this.categoriesOffset = layout.categories;
+        this.gtinSlots = slice(layout.gtinSlots).asIntBuffer();
+        this.gtinMask = slots - 1;
+        this.stringOffsets = slice(layout.stringOffsets).asIntBuffer();
+        this.stringDataOffset = layout.stringData;
+    }
+
+    /** Byte offsets of each column, which follow one another after the header. */
+    private static final class Layout {
+        final int prices;
+        final int gtins;
+        final int rxBits;
+        final int nameRefs;
+        final int iconRefs;
+        final int colors;
+        final int stocks;
+        final int categories;
+        final int gtinSlots;
+        final int stringOffsets;
+        final int stringData;
+
+        Layout(int count, int strings, int slots) {
+            prices = HEADER_SIZE;
+            gtins = prices + count * 8;
+            rxBits = gtins + count * 8;
+            nameRefs = rxBits + rxWords(count) * 8;
+            iconRefs = nameRefs + count * 4;
+            colors = iconRefs + count * 4;
+            stocks = colors + count * 4;
+            categories = stocks + count * 4;
+            gtinSlots = (categories + count + 3) & ~3;
+            stringOffsets = gtinSlots + slots * 4;
+            stringData = stringOffsets + (strings + 1) * 4;
+        }
+    }
+
+    private static int rxWords(int count) {
+        return (count + 63) >>> 6;
+    }
+
+    private ByteBuffer slice(int offset) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        return view.slice();
+    }
+
+    static CatalogStore open(Path file, BiFunction<String, Color, Icon> iconFactory) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new CatalogStore(channel, iconFactory);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the catalog in the kiosk data directory, re-importing it first when the source CSV changed.
+     * The source is the file named by -Dkiosk.catalog.csv, or the catalog bundled with the application.
+     */
+    static CatalogStore openDefault(BiFunction<String, Color, Icon> iconFactory) throws IOException {
+        Path target = KioskFiles.dataDir().resolve("catalog.bin");
+        String external = System.getProperty("kiosk.catalog.csv");
+        if (external != null) {
+            Path csv = Paths.get(external);
+            long stamp = Files.getLastModifiedTime(csv).toMillis() * 31 + Files.size(csv);
+            if (!isCurrent(target, stamp)) {
+                try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+                    importCsv(reader, stamp, target);
+                }
+            }
+        } else {
+            byte[] bundled = readBundledCsv();
+            CRC32 crc = new CRC32();
+            crc.update(bundled, 0, bundled.length);
+            long stamp = crc.getValue();
+            if (!isCurrent(target, stamp)) {
+                importCsv(new BufferedReader(new InputStreamReader(
+                        new ByteArrayInputStream(bundled), StandardCharsets.UTF_8)), stamp, target);
+            }
+        }
+        return open(target, iconFactory);
+    }
+
+    int size() {
+        return count;
+    }
+
+    /** Identifies the CSV this file was imported from; changes whenever catalog indexes may have moved. */
+    long sourceStamp() {
+        return buffer.getLong(8);
+    }
+
+    /** Products of one category: a slice of ids, materialized row by row as they are read. */
+    List<Product> category(int category) {
+        return new CategoryView(categoryStart[category], categoryLength[category]);
+    }
+
+    /** Id of the first product of {@code category}; its products are the ids that follow. */
+    int categoryStart(int category) {
+        return categoryStart[category];
+    }
+
+    /** Products at the given catalog indexes, in that order. */
+    List<Product> products(int[] indexes) {
+        return new AbstractList<Product>() {
+            @Override
+            public Product get(int i) {
+                return product(indexes[i]);
+            }
+
+            @Override
+            public int size() {
+                return indexes.length;
+            }
+        };
+    }
+
+    String name(int index) {
+        return string(nameRefs.get(checkIndex(index)));
+    }
+
+    long priceCents(int index) {
+        return prices.get(checkIndex(index));
+    }
+
+    boolean isRx(int index) {
+        checkIndex(index);
+        return (rxBits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /** The product's GTIN, or 0 when it has none. */
+    long gtin(int index) {
+        return gtins.get(checkIndex(index));
+    }
+
+    /** The id of the product with this GTIN, or -1. */
+    int findGtin(long gtin) {
+        if (gtin <= 0) return -1;
+        for (int slot = gtinHash(gtin) & gtinMask; ; slot = (slot + 1) & gtinMask) {
+            int id = gtinSlots.get(slot) - 1;
+            if (id < 0) return -1;
+            if (gtins.get(id) == gtin) return id;
+        }
+    }
+
+    private static int gtinHash(long gtin) {
+        long h = gtin * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    String iconText(int index) {
+        return string(iconRefs.get(checkIndex(index)));
+    }
+
+    int iconColor(int index) {
+        return colors.get(checkIndex(index));
+    }
+
+    /** Units in stock when the catalog was exported, or -1 when the product's stock is not tracked. */
+    int stock(int index) {
+        return stocks.get(checkIndex(index));
+    }
+
+    int categoryOf(int index) {
+        return buffer.get(categoriesOffset + checkIndex(index));
+    }
+
+    /** Shows products' photos over their generated icons; only products materialized afterwards get them. */
+    void setPhotos(ProductPhotos photos) {
+        this.photos = photos;
+    }
+
+    Product product(int index) {
+        synchronized (materialized) {
+            Product product = materialized.get(index);
+            if (product != null) return product;
+        }
+        Icon icon = iconFactory.apply(iconText(index), new Color(iconColor(index)));
+        ProductPhotos photos = this.photos;
+        if (photos != null) icon = photos.icon(gtin(index), icon);
+        Product product = new Product(index, name(index), priceCents(index), icon, isRx(index), categoryOf(index));
+        synchronized (materialized) {
+            materialized.put(index, product);
+        }
+        return product;
+    }
+
+    /** How many products are cached as objects; at most {@value #MATERIALIZED_CACHE_SIZE}. */
+    int materializedCount() {
+        synchronized (materialized) {
+            return materialized.size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Catalog index: " + index);
+        return index;
+    }
+
+    private String string(int ref) {
+        int start = stringOffsets.get(ref);
+        byte[] bytes = new byte[stringOffsets.get(ref + 1) - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(stringDataOffset + start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private final class CategoryView extends AbstractList<Product> implements RandomAccess {
+        private final int start;
+        private final int length;
+
+        CategoryView(int start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public Product get(int index) {
+            if (index < 0 || index >= length) throw new IndexOutOfBoundsException("Index: " + index);
+            return product(start + index);
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+    }
+
+    private static boolean isCurrent(Path target, long stamp) {
+        if (!Files.exists(target)) return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(target)))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION && in.readLong() == stamp;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static byte[] readBundledCsv() throws IOException {
+        try (InputStream in = CatalogStore.class.getResourceAsStream("/catalog.csv")) {
+            if (in == null) throw new FileNotFoundException("Bundled catalog.csv is missing");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static final class Row {
+        final String name;
+        final long priceCents;
+        final boolean rx;
+        final String icon;
+        final int color;
+        final long gtin;
+        final int stock;
+
+        Row(String name, long priceCents, boolean rx, String icon, int color, long gtin, int stock) {
+            this.name = name;
+            this.priceCents = priceCents;
+            this.rx = rx;
+            this.icon = icon;
+            this.color = color;
+            this.gtin = gtin;
+            this.stock = stock;
+        }
+    }
+
+    /** Converts a catalog CSV into the binary format. The file is written next to the target and moved into place. */
+    static int importCsv(BufferedReader reader, long sourceStamp, Path target) throws IOException {
+        List<List<Row>> rows = new ArrayList<>();
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            rows.add(new ArrayList<>());
+        }
+
+        Set<Long> seenGtins = new HashSet<>();
+        String line = reader.readLine(); // header
+        int lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) continue;
+            List<String> fields = splitCsv(line);
+            if (fields.size() < 6) throw new IOException("Line " + lineNumber + ": expected 6 fields");
+            int category = Arrays.asList(CATEGORIES).indexOf(fields.get(2).trim());
+            if (category < 0) throw new IOException("Line " + lineNumber + ": unknown category " + fields.get(2));
+            try {
+                long priceCents = new BigDecimal(fields.get(1).trim()).setScale(2, RoundingMode.HALF_UP)
+                        .movePointRight(2).longValueExact();
+                long gtin = 0;
+                if (fields.size() > 6 && !fields.get(6).trim().isEmpty()) {
+                    gtin = Gtin.parse(fields.get(6).trim());
+                    if (gtin < 0) throw new IOException("Line " + lineNumber + ": invalid GTIN " + fields.get(6));
+                    if (!seenGtins.add(gtin)) throw new IOException("Line " + lineNumber + ": duplicate GTIN " + fields.get(6));
+                }
+                int stock = -1;
+                if (fields.size() > 7 && !fields.get(7).trim().isEmpty()) {
+                    stock = Integer.parseInt(fields.get(7).trim());
+                    if (stock < 0) throw new IOException("Line " + lineNumber + ": negative stock");
+                }
+                rows.get(category).add(new Row(fields.get(0), priceCents, Boolean.parseBoolean(fields.get(3).trim()),
+                        fields.get(4), Integer.parseInt(fields.get(5).trim(), 16), gtin, stock));
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+
+        List<Row> all = new ArrayList<>();
+        for (List<Row> category : rows) {
+            all.addAll(category);
+        }
+        int count = all.size();
+
+        // Intern names and icon labels: repeated strings are stored once and referenced by index.
+        Map<String, Integer> interned = new HashMap<>();
+        ByteArrayOutputStream stringData = new ByteArrayOutputStream();
+        int[] stringOffsets = new int[16];
+        int[] nameRefs = new int[count];
+        int[] iconRefs = new int[count];
+        for (int i = 0; i < count; i++) {
+            Row row = all.get(i);
+            for (int field = 0; field < 2; field++) {
+                String value = field == 0 ? row.name : row.icon;
+                Integer ref = interned.get(value);
+                if (ref == null) {
+                    ref = interned.size();
+                    interned.put(value, ref);
+                    if (ref + 1 >= stringOffsets.length) stringOffsets = Arrays.copyOf(stringOffsets, stringOffsets.length * 2);
+                    stringData.write(value.getBytes(StandardCharsets.UTF_8));
+                    stringOffsets[ref + 1] = stringData.size();
+                }
+                if (field == 0) nameRefs[i] = ref;
+                else iconRefs[i] = ref;
+            }
+        }
+        int strings = interned.size();
+
+        // GTIN table: id + 1 per slot, 0 for free, at most half full.
+        int slots = Integer.highestOneBit(Math.max(1, seenGtins.size()) * 2 - 1) << 1;
+        int[] gtinSlots = new int[slots];
+        for (int i = 0; i < count; i++) {
+            long gtin = all.get(i).gtin;
+            if (gtin == 0) continue;
+            int slot = gtinHash(gtin) & (slots - 1);
+            while (gtinSlots[slot] != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            gtinSlots[slot] = i + 1;
+        }
+        Layout layout = new Layout(count, strings, slots);
+
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceStamp);
+            out.writeInt(count);
+            int start = 0;
+            for (List<Row> category : rows) {
+                out.writeInt(start);
+                out.writeInt(category.size());
+                start += category.size();
+            }
+            out.writeInt(strings);
+            out.writeInt(slots);
+
+            for (Row row : all) {
+                out.writeLong(row.priceCents);
+            }
+            for (Row row : all) {
+                out.writeLong(row.gtin);
+            }
+            long bits = 0;
+            for (int i = 0; i < count; i++) {
+                if (all.get(i).rx) bits |= 1L << i;
+                if ((i & 63) == 63 || i == count - 1) {
+                    out.writeLong(bits);
+                    bits = 0;
+                }
+            }
+            for (int ref : nameRefs) {
+                out.writeInt(ref);
+            }
+            for (int ref : iconRefs) {
+                out.writeInt(ref);
+            }
+            for (Row row : all) {
+                out.writeInt(row.color);
+            }
+            for (Row row : all) {
+                out.writeInt(row.stock);
+            }
+            for (int c = 0; c < rows.size(); c++) {
+                for (int i = 0; i < rows.get(c).size(); i++) {
+                    out.writeByte(c);
+                }
+            }
+            while (out.size() < layout.gtinSlots) {
+                out.writeByte(0);
+            }
+            for (int slot : gtinSlots) {
+                out.writeInt(slot);
+            }
+            for (int i = 0; i <= strings; i++) {
+                out.writeInt(stringOffsets[i]);
+            }
+            stringData.writeTo(out);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (ch == '"') {
+                    quoted = false;
+                } else {
+                    field.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(ch);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /** Back-office import: {@code CatalogStore <catalog.csv> <catalog.bin>}. */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CatalogStore <catalog.csv> <catalog.bin>");
+            System.exit(2);
+        }
+        Path csv = Paths.get(args[0]);
+        long stamp = Files.getLastModifiedTime(csv).toMillis() * 31 + Files.size(csv);
+        long started = System.nanoTime();
+        int count;
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            count = importCsv(reader, stamp, Paths.get(args[1]));
+        }
+        System.out.println("Imported " + count + " products in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+    }
+}
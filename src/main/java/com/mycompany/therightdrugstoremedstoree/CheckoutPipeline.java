@@ -0,0 +1,202 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import javax.swing.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Places orders off the Event Dispatch Thread. Each order runs validate, price, persist and receipt
+ * stages on a small bounded pool; {@link #submit} refuses new orders once the in-flight limit is reached
+ * instead of queueing without bound, and the outcome is delivered back on the EDT.
+ */
+class CheckoutPipeline {
+    private static final int WORKERS = 2;
+    private static final int MAX_IN_FLIGHT = 16;
+    private static final long PERSIST_TIMEOUT_SECONDS = 10;
+
+    static final String BUSY = "Checkout is busy, please try again in a moment.";
+    static final String IN_FLIGHT = "Your order is already being placed.";
+
+    /** Immutable copy of the cart taken on the EDT. */
+    static final class Order {
+        final List<CartEntry> lines;
+        final int discountFlags;
+        /** The stock reserved for the order, or null when stock is not checked. */
+        final InventoryLedger.Hold hold;
+
+        Order(List<CartEntry> lines, int discountFlags, InventoryLedger.Hold hold) {
+            this.lines = lines;
+            this.discountFlags = discountFlags;
+            this.hold = hold;
+        }
+
+        static Order snapshot(CartModel cart, InventoryLedger.Hold hold) {
+            List<CartEntry> lines = new ArrayList<>(cart.size());
+            for (int row = 0; row < cart.size(); row++) {
+                lines.add(new CartEntry(cart.product(row), cart.quantity(row)));
+            }
+            return new Order(Collections.unmodifiableList(lines), cart.discountFlags(), hold);
+        }
+    }
+
+    static final class Result {
+        final Order order;
+        final long orderNumber;
+        final long total;
+        final String receiptText;
+        /** Set when the order was not placed; the cart should be kept. */
+        final String error;
+        /** Set when the order was placed but the printer failed. */
+        final String printError;
+
+        Result(Order order, long orderNumber, long total, String receiptText, String error, String printError) {
+            this.order = order;
+            this.orderNumber = orderNumber;
+            this.total = total;
+            this.receiptText = receiptText;
+            this.error = error;
+            this.printError = printError;
+        }
+    }
+
+    private final PricingEngine pricing;
+    private final OrderJournal journal;
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(WORKERS, WORKERS, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_IN_FLIGHT), r -> {
+                Thread thread = new Thread(r, "checkout");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private final ThreadLocal<ReceiptWriter> previewWriters =
+            ThreadLocal.withInitial(() -> new ReceiptWriter(ReceiptWriter.Format.TEXT));
+    private final ThreadLocal<ReceiptWriter> printWriters =
+            ThreadLocal.withInitial(() -> new ReceiptWriter(ReceiptWriter.Format.ESC_POS));
+
+    /** {@code journal} may be null, in which case orders are not persisted. */
+    CheckoutPipeline(PricingEngine pricing, OrderJournal journal) {
+        this.pricing = pricing;
+        this.journal = journal;
+    }
+
+    /** Returns false without doing anything when too many orders are already in flight. */
+    boolean submit(Order order, Consumer<Result> onDone) {
+        return submit(order, onDone, SwingUtilities::invokeLater);
+    }
+
+    /** As {@link #submit(Order, Consumer)}, delivering the result through {@code callbacks} instead of the EDT. */
+    boolean submit(Order order, Consumer<Result> onDone, Executor callbacks) {
+        if (!inFlight.tryAcquire()) return false;
+        try {
+            executor.execute(() -> {
+                Result result;
+                long start = System.nanoTime();
+                try {
+                    result = process(order);
+                } catch (RuntimeException e) {
+                    result = new Result(order, 0, 0, null, String.valueOf(e.getMessage()), null);
+                } finally {
+                    inFlight.release();
+                    KioskMetrics.CHECKOUT.recordSince(start);
+                }
+                Result done = result;
+                callbacks.execute(() -> onDone.accept(done));
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            return false;
+        }
+    }
+
+    Result process(Order order) {
+        // Validate
+        if (order.lines.isEmpty()) return new Result(order, 0, 0, null, "Your cart is empty.", null);
+        for (CartEntry entry : order.lines) {
+            if (entry.quantity <= 0 || entry.product.priceCents < 0) {
+                return new Result(order, 0, 0, null, "Invalid cart line: " + entry.product.name, null);
+            }
+        }
+
+        // Price
+        // One table for the whole order, even if the promotions change meanwhile.
+        PriceTable prices = pricing.table();
+        PriceTable.Quote quote = new PriceTable.Quote();
+        prices.begin(quote, order.discountFlags);
+        for (CartEntry entry : order.lines) {
+            prices.addLine(quote, entry.product, entry.quantity);
+        }
+
+        // Stock
+        if (order.hold != null && !order.hold.commit(order.lines)) {
+            return new Result(order, 0, 0, null, "Some items just sold out, please review your cart.", null);
+        }
+
+        // Persist
+        long orderNumber = 0;
+        if (journal != null) {
+            orderNumber = journal.nextOrderNumber();
+            String error = persist(orderNumber, order, prices);
+            if (error != null) {
+                if (order.hold != null) order.hold.uncommit(order.lines);
+                return new Result(order, 0, 0, null, error, null);
+            }
+        }
+
+        // Receipt
+        String printError = null;
+        try (WritableByteChannel printer = ReceiptWriter.openPrinter()) {
+            printWriters.get().write(order.lines, prices, order.discountFlags, printer);
+        } catch (IOException e) {
+            printError = e.getMessage();
+        }
+        ByteArrayOutputStream preview = new ByteArrayOutputStream(1024);
+        try {
+            previewWriters.get().write(order.lines, prices, order.discountFlags, Channels.newChannel(preview));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new Result(order, orderNumber, quote.total,
+                new String(preview.toByteArray(), StandardCharsets.UTF_8), null, printError);
+    }
+
+    /**
+     * Journals the order and returns null once it is on disk, or why it is not. An order is only reported
+     * as failed when its record certainly never reaches the journal: after the timeout a record the writer
+     * has already taken is waited for, since replay would count it as placed.
+     */
+    private String persist(long orderNumber, Order order, PriceTable prices) {
+        CompletableFuture<Void> record = journal.order(orderNumber, order.lines, prices, order.discountFlags);
+        try {
+            record.get(PERSIST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return null;
+        } catch (InterruptedException | TimeoutException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            if (journal.cancel(record)) {
+                return e instanceof InterruptedException
+                        ? "Interrupted while saving the order" : "Timed out saving the order";
+            }
+            try {
+                record.join();
+                return null;
+            } catch (CompletionException | CancellationException f) {
+                Throwable cause = f.getCause() != null ? f.getCause() : f;
+                return "Unable to save the order: " + cause.getMessage();
+            }
+        } catch (ExecutionException e) {
+            return "Unable to save the order: " + e.getCause().getMessage();
+        }
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+}
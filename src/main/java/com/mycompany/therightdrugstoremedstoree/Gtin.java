@@ -0,0 +1,47 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+/**
+ * GTIN-8, UPC-A (GTIN-12), EAN-13 and GTIN-14 codes. A code is kept as its numeric value, which is the
+ * same for a code and its zero-padded longer forms, so a UPC-A label and its EAN-13 reading match.
+ */
+final class Gtin {
+    private Gtin() {
+    }
+
+    /** The value of {@code digits}, or -1 when it is not a GTIN with a valid check digit. */
+    static long parse(CharSequence digits) {
+        int length = digits.length();
+        if (length != 8 && length != 12 && length != 13 && length != 14) return -1;
+        long value = 0;
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = digits.charAt(i);
+            if (ch < '0' || ch > '9') return -1;
+            value = value * 10 + (ch - '0');
+            // Weights alternate 3, 1 from the digit left of the check digit.
+            if (i < length - 1) sum += ((length - 1 - i) & 1) == 1 ? 3 * (ch - '0') : ch - '0';
+        }
+        return (10 - sum % 10) % 10 == digits.charAt(length - 1) - '0' ? value : -1;
+    }
+
+    /** The digits of {@code gtin} as printed: GTIN-8 when it fits, else EAN-13, else GTIN-14. */
+    static String format(long gtin) {
+        String digits = Long.toString(gtin);
+        int length = gtin < 100_000_000L ? 8 : gtin < 10_000_000_000_000L ? 13 : 14;
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = digits.length(); i < length; i++) {
+            sb.append('0');
+        }
+        return sb.append(digits).toString();
+    }
+
+    /** {@code body} (the digits before the check digit) followed by its check digit. */
+    static String withCheckDigit(String body) {
+        int sum = 0;
+        for (int i = 0; i < body.length(); i++) {
+            int digit = body.charAt(i) - '0';
+            sum += ((body.length() - i) & 1) == 1 ? 3 * digit : digit;
+        }
+        return body + (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,196 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shared cache of the generated product icons, keyed by (text, color, size).
+ *
+ * {@link #icon} hands out a lightweight {@link Icon} that paints a placeholder until the image has been
+ * rendered on the background renderer thread, then repaints the components that asked for it. Rendered
+ * images are held through soft references in an LRU bounded by -Dkiosk.iconCache.bytes (16 MB by default).
+ */
+final class IconCache {
+    private static final long DEFAULT_BUDGET_BYTES = 16L * 1024 * 1024;
+    private static final Color PLACEHOLDER_COLOR = new Color(0xEEEEEE);
+    private static final Font BASE_FONT = new Font("Segoe UI", Font.BOLD, 36);
+    private static final int BASE_SIZE = 120;
+
+    private static final IconCache SHARED = new IconCache(Long.getLong("kiosk.iconCache.bytes", DEFAULT_BUDGET_BYTES));
+
+    private final long budgetBytes;
+    private long usedBytes;
+    private final LinkedHashMap<Key, SoftReference<BufferedImage>> images = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Key, List<Component>> pending = new HashMap<>();
+    private final Map<Integer, Font> fonts = new HashMap<>();
+    private volatile StartupSnapshot atlas;
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "icon-renderer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    IconCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    static IconCache shared() {
+        return SHARED;
+    }
+
+    /** Serves icons from the snapshot's pre-rendered atlas before falling back to rendering them. */
+    void setAtlas(StartupSnapshot atlas) {
+        this.atlas = atlas;
+    }
+
+    Icon icon(String text, Color color, int size) {
+        return new CachedIcon(new Key(text, color.getRGB(), size));
+    }
+
+    /** Returns the rendered image, or null after scheduling a render that will repaint {@code requester}. */
+    private synchronized BufferedImage lookup(Key key, Component requester) {
+        SoftReference<BufferedImage> ref = images.get(key);
+        BufferedImage image = ref != null ? ref.get() : null;
+        if (image != null) return image;
+        if (ref != null) {
+            images.remove(key);
+            usedBytes -= bytes(key);
+        }
+        StartupSnapshot snapshot = atlas;
+        image = snapshot != null && !pending.containsKey(key) ? snapshot.icon(key) : null;
+        if (image != null) {
+            store(key, image);
+            return image;
+        }
+
+        List<Component> waiting = pending.get(key);
+        if (waiting == null) {
+            waiting = new ArrayList<>(2);
+            pending.put(key, waiting);
+            renderer.execute(() -> {
+                BufferedImage rendered = render(key);
+                List<Component> toRepaint = store(key, rendered);
+                SwingUtilities.invokeLater(() -> {
+                    for (Component c : toRepaint) {
+                        c.repaint();
+                    }
+                });
+            });
+        }
+        if (requester != null && !waiting.contains(requester)) waiting.add(requester);
+        return null;
+    }
+
+    private synchronized List<Component> store(Key key, BufferedImage image) {
+        images.put(key, new SoftReference<>(image));
+        usedBytes += bytes(key);
+        Iterator<Map.Entry<Key, SoftReference<BufferedImage>>> eldest = images.entrySet().iterator();
+        while (usedBytes > budgetBytes && eldest.hasNext()) {
+            Map.Entry<Key, SoftReference<BufferedImage>> entry = eldest.next();
+            if (entry.getKey().equals(key)) continue;
+            usedBytes -= bytes(entry.getKey());
+            eldest.remove();
+        }
+        List<Component> waiting = pending.remove(key);
+        return waiting != null ? waiting : Collections.<Component>emptyList();
+    }
+
+    private static long bytes(Key key) {
+        return (long) key.size * key.size * 4;
+    }
+
+    private Font font(int size) {
+        synchronized (fonts) {
+            Font font = fonts.get(size);
+            if (font == null) {
+                font = size == BASE_SIZE ? BASE_FONT : BASE_FONT.deriveFont(BASE_FONT.getSize2D() * size / BASE_SIZE);
+                fonts.put(size, font);
+            }
+            return font;
+        }
+    }
+
+    BufferedImage render(Key key) {
+        long start = System.nanoTime();
+        int width = key.size;
+        int height = key.size;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setColor(new Color(key.rgb));
+        g2.fillRoundRect(0, 0, width, height, 20, 20);
+
+        g2.setColor(Color.WHITE);
+        g2.setFont(font(key.size));
+        FontMetrics fm = g2.getFontMetrics();
+        int textWidth = fm.stringWidth(key.text);
+        int textHeight = fm.getAscent();
+        g2.drawString(key.text, (width - textWidth) / 2, (height + textHeight) / 2 - height / 12);
+
+        g2.dispose();
+        KioskMetrics.ICON_RENDER.recordSince(start);
+        return image;
+    }
+
+    static final class Key {
+        final String text;
+        final int rgb;
+        final int size;
+
+        Key(String text, int rgb, int size) {
+            this.text = text;
+            this.rgb = rgb;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return rgb == key.rgb && size == key.size && text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return (text.hashCode() * 31 + rgb) * 31 + size;
+        }
+    }
+
+    private final class CachedIcon implements Icon {
+        private final Key key;
+
+        CachedIcon(Key key) {
+            this.key = key;
+        }
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            BufferedImage image = lookup(key, c);
+            if (image != null) {
+                g.drawImage(image, x, y, null);
+            } else {
+                g.setColor(PLACEHOLDER_COLOR);
+                g.fillRect(x, y, key.size, key.size);
+            }
+        }
+
+        @Override
+        public int getIconWidth() {
+            return key.size;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return key.size;
+        }
+    }
+}
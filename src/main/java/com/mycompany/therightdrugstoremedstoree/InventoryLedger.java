@@ -0,0 +1,232 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Units on hand and reserved per SKU, shared by every kiosk session in the JVM.
+ *
+ * Each SKU is one long in an {@link AtomicLongArray}: on-hand units in the high half, reserved units in the
+ * low half. Reserving is a single compare-and-set that checks and takes available stock together, and
+ * committing or releasing is a single atomic add, so the stock itself is never locked. SKUs are packed
+ * eight to a cache line. Giving each a line of its own costs 64 bytes per SKU, and in InventoryBenchmark
+ * it did not help the popular SKUs while reserving across the catalog got slower for the cache misses.
+ *
+ * Sessions reserve through a {@link Hold}. A hold that has been idle for the TTL (-Dkiosk.stock.holdMinutes,
+ * 15 by default) gives back everything it reserved, so an abandoned cart does not keep stock from the
+ * other kiosks; its checkout then reserves again.
+ */
+final class InventoryLedger {
+    /** On-hand units of SKUs whose stock is not tracked. */
+    static final int UNTRACKED = 1 << 30;
+
+    private static final long RESERVED = 0xFFFF_FFFFL;
+    private static final long ON_HAND_UNIT = 1L << 32;
+
+    private final AtomicLongArray stock;
+    private final int skus;
+    private final long ttlNanos;
+    private final Set<Hold> holds = ConcurrentHashMap.newKeySet();
+
+    InventoryLedger(int skus, long ttlNanos) {
+        this.stock = new AtomicLongArray(Math.max(1, skus));
+        this.skus = skus;
+        this.ttlNanos = ttlNanos;
+    }
+
+    /** Stock as exported with the catalog, less the units ordered since (see {@link OrderJournal.Recovery#sold}). */
+    static InventoryLedger fromCatalog(CatalogStore catalog, CartLines sold) {
+        long ttl = TimeUnit.MINUTES.toNanos(Long.getLong("kiosk.stock.holdMinutes", 15));
+        InventoryLedger ledger = new InventoryLedger(catalog.size(), ttl);
+        for (int sku = 0; sku < catalog.size(); sku++) {
+            int exported = catalog.stock(sku);
+            ledger.setOnHand(sku, exported < 0 ? UNTRACKED : exported);
+        }
+        for (int row = 0; row < sold.size(); row++) {
+            int sku = sold.sku(row);
+            if (sku < catalog.size() && catalog.stock(sku) >= 0) {
+                ledger.setOnHand(sku, Math.max(0, ledger.onHand(sku) - sold.quantity(row)));
+            }
+        }
+        return ledger;
+    }
+
+    int size() {
+        return skus;
+    }
+
+    void setOnHand(int sku, int units) {
+        if (units < 0) throw new IllegalArgumentException("Units: " + units);
+        int i = index(sku);
+        long word;
+        do {
+            word = stock.get(i);
+        } while (!stock.compareAndSet(i, word, (long) units << 32 | (word & RESERVED)));
+    }
+
+    void restock(int sku, int units) {
+        stock.getAndAdd(index(sku), units * ON_HAND_UNIT);
+    }
+
+    int onHand(int sku) {
+        return (int) (stock.get(index(sku)) >> 32);
+    }
+
+    int reserved(int sku) {
+        return (int) (stock.get(index(sku)) & RESERVED);
+    }
+
+    int available(int sku) {
+        long word = stock.get(index(sku));
+        return (int) (word >> 32) - (int) (word & RESERVED);
+    }
+
+    /** Reserves up to {@code units} and returns how many it could. */
+    int reserve(int sku, int units) {
+        int i = index(sku);
+        while (true) {
+            long word = stock.get(i);
+            int taken = Math.min(units, (int) (word >> 32) - (int) (word & RESERVED));
+            if (taken <= 0) return 0;
+            if (stock.compareAndSet(i, word, word + taken)) return taken;
+        }
+    }
+
+    void release(int sku, int units) {
+        stock.getAndAdd(index(sku), -units);
+    }
+
+    /** Turns reserved units into sold ones: they leave both the reserved and the on-hand count. */
+    void commit(int sku, int units) {
+        stock.getAndAdd(index(sku), -(units * ON_HAND_UNIT + units));
+    }
+
+    /** Undoes {@link #commit}: the units are back on hand and reserved again. */
+    void uncommit(int sku, int units) {
+        stock.getAndAdd(index(sku), units * ON_HAND_UNIT + units);
+    }
+
+    private int index(int sku) {
+        if (sku < 0 || sku >= skus) throw new IndexOutOfBoundsException("Sku: " + sku);
+        return sku;
+    }
+
+    Hold open() {
+        Hold hold = new Hold();
+        holds.add(hold);
+        return hold;
+    }
+
+    /** Releases holds idle for longer than the TTL and returns how many there were. */
+    int expireIdle(long nowNanos) {
+        int expired = 0;
+        for (Hold hold : holds) {
+            if (hold.expireIfIdle(nowNanos)) expired++;
+        }
+        return expired;
+    }
+
+    /** Checks for idle holds on a daemon thread, a few times per TTL. */
+    void startExpiry() {
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stock-holds");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(TimeUnit.SECONDS.toNanos(1), Math.min(ttlNanos / 4, TimeUnit.SECONDS.toNanos(30)));
+        sweeper.scheduleWithFixedDelay(() -> expireIdle(System.nanoTime()), period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * What one session has reserved, by sku. A hold belongs to one session but the expiry sweep also
+     * touches it, so its methods are synchronized; the lock is per session and almost never contended.
+     */
+    final class Hold {
+        private final CartLines lines = new CartLines();
+        private long lastUsed = System.nanoTime();
+
+        /** Reserves up to {@code units} more of {@code sku} and returns how many it could. */
+        synchronized int reserve(int sku, int units) {
+            lastUsed = System.nanoTime();
+            int taken = InventoryLedger.this.reserve(sku, units);
+            if (taken > 0) lines.add(sku, taken);
+            return taken;
+        }
+
+        synchronized void release(int sku, int units) {
+            lastUsed = System.nanoTime();
+            int row = lines.row(sku);
+            if (row < 0) return;
+            int held = lines.quantity(row);
+            int released = Math.min(units, held);
+            InventoryLedger.this.release(sku, released);
+            lines.set(sku, held - released);
+        }
+
+        synchronized int held(int sku) {
+            int row = lines.row(sku);
+            return row < 0 ? 0 : lines.quantity(row);
+        }
+
+        /**
+         * Sells the order's lines out of this hold, reserving whatever the hold no longer covers (after
+         * expiry, say). Either every line is committed or, when stock ran out, none is and false is returned.
+         */
+        synchronized boolean commit(List<CartEntry> order) {
+            lastUsed = System.nanoTime();
+            int[] extra = new int[order.size()];
+            for (int i = 0; i < order.size(); i++) {
+                CartEntry line = order.get(i);
+                int need = line.quantity - held(line.product.sku);
+                if (need <= 0) continue;
+                extra[i] = InventoryLedger.this.reserve(line.product.sku, need);
+                if (extra[i] < need) {
+                    for (int j = 0; j <= i; j++) {
+                        if (extra[j] > 0) InventoryLedger.this.release(order.get(j).product.sku, extra[j]);
+                    }
+                    return false;
+                }
+            }
+            for (int i = 0; i < order.size(); i++) {
+                CartEntry line = order.get(i);
+                int sku = line.product.sku;
+                InventoryLedger.this.commit(sku, line.quantity);
+                lines.set(sku, held(sku) - (line.quantity - extra[i]));
+            }
+            return true;
+        }
+
+        /** Undoes {@link #commit} for an order that could not be placed after all; its units are held again. */
+        synchronized void uncommit(List<CartEntry> order) {
+            lastUsed = System.nanoTime();
+            for (CartEntry line : order) {
+                InventoryLedger.this.uncommit(line.product.sku, line.quantity);
+                lines.add(line.product.sku, line.quantity);
+            }
+        }
+
+        synchronized void releaseAll() {
+            for (int row = 0; row < lines.size(); row++) {
+                InventoryLedger.this.release(lines.sku(row), lines.quantity(row));
+            }
+            lines.clear();
+        }
+
+        /** Releases everything and stops tracking the hold, e.g. when its session ends. */
+        void close() {
+            releaseAll();
+            holds.remove(this);
+        }
+
+        private synchronized boolean expireIfIdle(long nowNanos) {
+            if (lines.size() == 0 || nowNanos - lastUsed < ttlNanos) return false;
+            releaseAll();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Types barcodes the way an HID scanner does, for trying the scanner path without one: the digits of a
+ * code about a millisecond apart, then Enter, at a steady number of scans per second. Codes are the
+ * catalog's GTINs picked at random, a third of them repeating the previous scan.
+ *
+ * {@link #type} drives any {@link Keys}, such as a {@link ScanParser}; {@link #startTyping} posts real key
+ * events to the kiosk, which is what -Dkiosk.scanner.simulate=SCANS_PER_SECOND does.
+ */
+final class KeystrokeSource {
+    private static final long KEY_GAP_NANOS = TimeUnit.MICROSECONDS.toNanos(1200);
+
+    interface Keys {
+        /** One typed character, Enter being {@code '\n'}. */
+        void key(char ch, long nanos);
+    }
+
+    private final String[] codes;
+    private final Random random;
+    private String previous;
+
+    KeystrokeSource(CatalogStore catalog, long seed) {
+        int withGtin = 0;
+        for (int id = 0; id < catalog.size(); id++) {
+            if (catalog.gtin(id) != 0) withGtin++;
+        }
+        if (withGtin == 0) throw new IllegalArgumentException("The catalog has no GTINs");
+        codes = new String[withGtin];
+        for (int id = 0, i = 0; id < catalog.size(); id++) {
+            if (catalog.gtin(id) != 0) codes[i++] = Gtin.format(catalog.gtin(id));
+        }
+        random = new Random(seed);
+    }
+
+    String nextCode() {
+        if (previous == null || random.nextInt(3) != 0) previous = codes[random.nextInt(codes.length)];
+        return previous;
+    }
+
+    /** Types {@code scans} codes into {@code keys}, blocking the calling thread for the duration. */
+    void type(Keys keys, int scans, double scansPerSecond) {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / scansPerSecond);
+        long next = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            String code = nextCode();
+            for (int c = 0; c <= code.length(); c++) {
+                keys.key(c < code.length() ? code.charAt(c) : '\n', System.nanoTime());
+                LockSupport.parkNanos(KEY_GAP_NANOS);
+            }
+            next += interval;
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+    }
+
+    /** Keeps scanning into the focused component on a daemon thread until the JVM exits. */
+    static void startTyping(CatalogStore catalog, double scansPerSecond) {
+        KeystrokeSource source = new KeystrokeSource(catalog, System.nanoTime());
+        EventQueue queue = Toolkit.getDefaultToolkit().getSystemEventQueue();
+        Thread thread = new Thread(() -> {
+            while (true) {
+                source.type((ch, nanos) -> {
+                    Component owner = KeyboardFocusManager.getCurrentKeyboardFocusManager().getFocusOwner();
+                    if (owner == null) return;
+                    long when = System.currentTimeMillis();
+                    int keyCode = ch == '\n' ? KeyEvent.VK_ENTER : KeyEvent.VK_0 + (ch - '0');
+                    queue.postEvent(new KeyEvent(owner, KeyEvent.KEY_PRESSED, when, 0, keyCode, ch));
+                    queue.postEvent(new KeyEvent(owner, KeyEvent.KEY_TYPED, when, 0, KeyEvent.VK_UNDEFINED, ch));
+                    queue.postEvent(new KeyEvent(owner, KeyEvent.KEY_RELEASED, when, 0, keyCode, ch));
+                }, 100, scansPerSecond);
+            }
+        }, "simulated-scanner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,287 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * A thin terminal: the session lives in a {@link KioskServer} and this side keeps a mirror of its cart
+ * for the screen. The catalog file is mapped here too, which the OS shares with the server's mapping, so
+ * products travel as catalog indexes only.
+ *
+ * Requests are pipelined and nothing but the hello waits for its reply. Discount changes and removals get
+ * none; adds and checkouts complete through callbacks once the server has answered. Replies are read on a
+ * thread of their own and matched to their requests by tag, and since the server answers in order, an add
+ * is in the mirror cart before a checkout sent after it comes back. The mirror cart only changes on the
+ * thread driving the session, as with a {@link KioskSession}; unlike one, a busy checkout is reported as
+ * an error result rather than by {@link #placeOrder} returning false.
+ */
+final class KioskClient implements CartSession {
+    private static final long REPLY_TIMEOUT_SECONDS = 5;
+    private static final String LOST_ORDER =
+            "Lost the connection to the checkout, so your order may have gone through. Please ask the pharmacist.";
+
+    private final CatalogStore catalog;
+    private final CartModel cart;
+    private final SocketChannel channel;
+    private final KioskProtocol.FrameBuffer out = new KioskProtocol.FrameBuffer(256);
+    private final Map<Integer, CompletableFuture<ByteBuffer>> pending = new ConcurrentHashMap<>();
+    private int nextTag;
+    private int addsInFlight;
+    private boolean placingOrder;
+    private volatile IOException failure;
+
+    private KioskClient(CatalogStore catalog, PricingEngine pricing, SocketChannel channel) {
+        this.catalog = catalog;
+        this.cart = new CartModel(pricing);
+        this.channel = channel;
+        cart.addListener(KioskMetrics.cartCounters());
+    }
+
+    /** Connects to a server on this machine and checks that it serves the same catalog. */
+    static KioskClient connect(int port, CatalogStore catalog, PricingEngine pricing) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        channel.socket().setTcpNoDelay(true);
+        KioskClient client = new KioskClient(catalog, pricing, channel);
+        Thread reader = new Thread(client::readReplies, "kiosk-client");
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            client.await(client.send(KioskProtocol.HELLO, buffer -> buffer.putLong(catalog.sourceStamp())));
+        } catch (IOException e) {
+            client.close();
+            throw e;
+        }
+        return client;
+    }
+
+    @Override
+    public CartModel cart() {
+        return cart;
+    }
+
+    @Override
+    public List<Product> browse(int category) {
+        return catalog.category(category);
+    }
+
+    @Override
+    public void setDiscountFlags(int flags) {
+        if (flags == cart.discountFlags()) return;
+        cart.setDiscountFlags(flags);
+        sendQuietly(KioskProtocol.FLAGS, buffer -> buffer.putInt(flags));
+    }
+
+    @Override
+    public void reprice() {
+        cart.reprice();
+    }
+
+    /** As {@link CartSession#addToCart}; also adds 0 when the server cannot be reached. */
+    @Override
+    public void addToCart(Product product, int units, IntConsumer onAdded, Executor callbacks) {
+        CompletableFuture<ByteBuffer> reply;
+        try {
+            reply = send(KioskProtocol.ADD, buffer -> buffer.putInt(product.sku).putInt(units));
+        } catch (IOException e) {
+            reply = CompletableFuture.failedFuture(e);
+        }
+        addsInFlight++;
+        reply.whenComplete((payload, error) -> {
+            if (error != null) System.err.println("Unable to add to the cart: " + error.getMessage());
+            int added = error == null ? payload.getInt() : 0;
+            callbacks.execute(() -> {
+                addsInFlight--;
+                if (added > 0) cart.add(product, added);
+                onAdded.accept(added);
+            });
+        });
+    }
+
+    @Override
+    public void removeOne(int row) {
+        if (row < 0 || row >= cart.size()) return;
+        int sku = cart.product(row).sku;
+        cart.decrement(row);
+        sendQuietly(KioskProtocol.REMOVE, buffer -> buffer.putInt(sku));
+    }
+
+    @Override
+    public boolean placeOrder(Consumer<CheckoutPipeline.Result> onDone, Executor callbacks) {
+        // The server adds before it checks out, so units still on their way count as being in the cart.
+        if ((cart.isEmpty() && addsInFlight == 0) || placingOrder) return false;
+        placingOrder = true;
+        int flags = cart.discountFlags();
+        CompletableFuture<ByteBuffer> reply;
+        boolean sent;
+        try {
+            reply = send(KioskProtocol.CHECKOUT, buffer -> {});
+            sent = true;
+        } catch (IOException e) {
+            reply = CompletableFuture.failedFuture(e);
+            sent = false;
+        }
+        boolean maybeOrdered = sent;
+        // No timeout: the server may still commit an order the client gave up on. The reply comes, or the
+        // connection fails, and after that this client sends nothing, so it cannot order the cart twice.
+        reply.whenComplete((payload, error) -> {
+            CheckoutPipeline.Result result;
+            try {
+                if (error == null) {
+                    result = order(payload, flags);
+                } else {
+                    result = failed(flags, maybeOrdered ? LOST_ORDER : "Unable to reach the checkout: " + error.getMessage());
+                }
+            } catch (IOException e) {
+                result = failed(flags, "Unable to read the order: " + e.getMessage());
+            }
+            CheckoutPipeline.Result done = result;
+            callbacks.execute(() -> {
+                placingOrder = false;
+                if (done.error == null) {
+                    for (CartEntry line : done.order.lines) {
+                        cart.remove(line.product, line.quantity);
+                    }
+                }
+                onDone.accept(done);
+            });
+        });
+        return true;
+    }
+
+    @Override
+    public boolean isPlacingOrder() {
+        return placingOrder;
+    }
+
+    private CheckoutPipeline.Result order(ByteBuffer in, int flags) throws IOException {
+        long orderNumber = in.getLong();
+        long total = in.getLong();
+        int count = in.getInt();
+        List<CartEntry> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int sku = in.getInt();
+            int quantity = in.getInt();
+            if (sku < 0 || sku >= catalog.size()) throw new IOException("Unknown sku " + sku);
+            lines.add(new CartEntry(catalog.product(sku), quantity));
+        }
+        String error = KioskProtocol.getString(in);
+        String printError = KioskProtocol.getString(in);
+        String receipt = KioskProtocol.getString(in);
+        CheckoutPipeline.Order order = new CheckoutPipeline.Order(Collections.unmodifiableList(lines), flags, null);
+        return new CheckoutPipeline.Result(order, orderNumber, total, receipt, error, printError);
+    }
+
+    private static CheckoutPipeline.Result failed(int flags, String error) {
+        CheckoutPipeline.Order order = new CheckoutPipeline.Order(Collections.emptyList(), flags, null);
+        return new CheckoutPipeline.Result(order, 0, 0, null, error, null);
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    private interface Payload {
+        void write(KioskProtocol.FrameBuffer buffer);
+    }
+
+    /** Writes one request and returns its reply, which never completes for requests that get none. */
+    private CompletableFuture<ByteBuffer> send(byte type, Payload payload) throws IOException {
+        CompletableFuture<ByteBuffer> reply = new CompletableFuture<>();
+        synchronized (out) {
+            if (failure != null) throw failure;
+            int tag = nextTag++;
+            if (type != KioskProtocol.FLAGS && type != KioskProtocol.REMOVE) pending.put(tag, reply);
+            out.begin(type, tag);
+            payload.write(out);
+            out.end();
+            ByteBuffer bytes = out.flip();
+            try {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } catch (IOException e) {
+                failure = e;
+                pending.remove(tag);
+                throw e;
+            } finally {
+                out.compact();
+            }
+        }
+        return reply;
+    }
+
+    private void sendQuietly(byte type, Payload payload) {
+        try {
+            send(type, payload);
+        } catch (IOException e) {
+            System.err.println("Unable to reach the kiosk server: " + e.getMessage());
+        }
+    }
+
+    private ByteBuffer await(CompletableFuture<ByteBuffer> reply) throws IOException {
+        try {
+            return reply.get(REPLY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the kiosk server");
+        } catch (TimeoutException e) {
+            throw new IOException("The kiosk server did not reply");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    private void readReplies() {
+        ByteBuffer in = ByteBuffer.allocate(8192);
+        try {
+            while (channel.read(in) >= 0) {
+                in.flip();
+                int size;
+                while ((size = KioskProtocol.frameSize(in)) > 0) {
+                    int start = in.position();
+                    in.getInt();
+                    byte type = in.get();
+                    int tag = in.getInt();
+                    ByteBuffer payload = ByteBuffer.wrap(Arrays.copyOfRange(in.array(), in.position(), start + size));
+                    in.position(start + size);
+                    CompletableFuture<ByteBuffer> reply = pending.remove(tag);
+                    if (reply == null) continue;
+                    if (type == KioskProtocol.ERROR) {
+                        reply.completeExceptionally(new IOException(KioskProtocol.getString(payload)));
+                    } else {
+                        reply.complete(payload);
+                    }
+                }
+                in.compact();
+                if (!in.hasRemaining()) in = ByteBuffer.allocate(in.capacity() * 2).put(in.flip());
+            }
+            fail(new IOException("The kiosk server closed the connection"));
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        synchronized (out) {
+            failure = e;
+        }
+        for (Integer tag : pending.keySet()) {
+            CompletableFuture<ByteBuffer> reply = pending.remove(tag);
+            if (reply != null) reply.completeExceptionally(e);
+        }
+    }
+}
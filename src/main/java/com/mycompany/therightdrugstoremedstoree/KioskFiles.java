@@ -0,0 +1,24 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Location of the files the kiosk keeps between runs. Defaults to ~/.pharmacy-kiosk and can be
+ * moved with -Dkiosk.data.dir.
+ */
+final class KioskFiles {
+    private KioskFiles() {
+    }
+
+    static Path dataDir() throws IOException {
+        String configured = System.getProperty("kiosk.data.dir");
+        Path dir = configured != null
+                ? Paths.get(configured)
+                : Paths.get(System.getProperty("user.home"), ".pharmacy-kiosk");
+        Files.createDirectories(dir);
+        return dir;
+    }
+}
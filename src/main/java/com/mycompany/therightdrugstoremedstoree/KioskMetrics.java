@@ -0,0 +1,209 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.awt.*;
+import java.awt.event.InputEvent;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Always-on kiosk instrumentation: EDT dispatch times, hot-path durations and cart mutation counts.
+ * Exposed over JMX under {@code com.mycompany.kiosk} and appended every -Dkiosk.metrics.intervalSeconds
+ * (60 by default) to metrics/metrics-YYYY-MM-DD.log in the data directory, one file per day.
+ */
+final class KioskMetrics {
+    static final LatencyHistogram EDT_DISPATCH = new LatencyHistogram("edt.dispatch");
+    static final LatencyHistogram EDT_INPUT_DELAY = new LatencyHistogram("edt.inputDelay");
+    static final LatencyHistogram REFRESH_PRODUCTS = new LatencyHistogram("refreshProducts");
+    static final LatencyHistogram SHOW_CART_DIALOG = new LatencyHistogram("showCartDialog");
+    static final LatencyHistogram SHOW_RECEIPT = new LatencyHistogram("showReceipt");
+    static final LatencyHistogram CHECKOUT = new LatencyHistogram("checkout");
+    static final LatencyHistogram ICON_RENDER = new LatencyHistogram("iconRender");
+    /** From the first scan of a batch to its lines being in the cart. */
+    static final LatencyHistogram SCAN_TO_CART = new LatencyHistogram("scan.toCart");
+    /** Decoding and downscaling one product photo that was not in the thumbnail cache. */
+    static final LatencyHistogram PHOTO_DECODE = new LatencyHistogram("photo.decode");
+    /** Time from JVM start to the first painted product grid; one sample per run. */
+    static final LatencyHistogram FIRST_PAINT = new LatencyHistogram("startup.firstPaint");
+    /** Writing the startup snapshot in the background after a run without a current one. */
+    static final LatencyHistogram SNAPSHOT_WRITE = new LatencyHistogram("startup.snapshotWrite");
+
+    private static final LatencyHistogram[] HISTOGRAMS = {
+            EDT_DISPATCH, EDT_INPUT_DELAY, REFRESH_PRODUCTS, SHOW_CART_DIALOG, SHOW_RECEIPT, CHECKOUT, ICON_RENDER,
+            SCAN_TO_CART, PHOTO_DECODE, FIRST_PAINT, SNAPSHOT_WRITE
+    };
+
+    static final LongAdder LINES_ADDED = new LongAdder();
+    static final LongAdder QUANTITY_CHANGES = new LongAdder();
+    static final LongAdder LINES_REMOVED = new LongAdder();
+    static final LongAdder CLEARS = new LongAdder();
+
+    private static boolean started;
+
+    private KioskMetrics() {
+    }
+
+    /** Registers the JMX beans, starts the metrics file and times every event on the EDT. */
+    static synchronized void start() {
+        if (started) return;
+        started = true;
+        registerMBeans();
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new TimedEventQueue());
+
+        long interval = Long.getLong("kiosk.metrics.intervalSeconds", 60);
+        ScheduledExecutorService roller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-roller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        MetricsFile file = new MetricsFile();
+        roller.scheduleAtFixedRate(file::append, interval, interval, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(file::append, "metrics-flush"));
+    }
+
+    /** Records the time to first paint, measured from JVM start. */
+    static void firstPaint() {
+        FIRST_PAINT.record(TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime()));
+    }
+
+    static CartModel.Listener cartCounters() {
+        return (type, row, product, quantity) -> {
+            switch (type) {
+                case CartModel.INSERTED:
+                    LINES_ADDED.increment();
+                    break;
+                case CartModel.UPDATED:
+                    QUANTITY_CHANGES.increment();
+                    break;
+                case CartModel.DELETED:
+                    LINES_REMOVED.increment();
+                    break;
+                case CartModel.CLEARED:
+                    CLEARS.increment();
+                    break;
+                default:
+                    break;
+            }
+        };
+    }
+
+    private static void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (LatencyHistogram histogram : HISTOGRAMS) {
+                server.registerMBean(new StandardMBean(histogram, LatencyMXBean.class, true),
+                        new ObjectName("com.mycompany.kiosk:type=Latency,name=" + histogram.name()));
+            }
+            server.registerMBean(new StandardMBean(new CartCounters(), CartCountersMXBean.class, true),
+                    new ObjectName("com.mycompany.kiosk:type=CartCounters"));
+        } catch (JMException e) {
+            System.err.println("Kiosk metrics are not available over JMX: " + e);
+        }
+    }
+
+    private static final class CartCounters implements CartCountersMXBean {
+        @Override
+        public long getLinesAdded() {
+            return LINES_ADDED.sum();
+        }
+
+        @Override
+        public long getQuantityChanges() {
+            return QUANTITY_CHANGES.sum();
+        }
+
+        @Override
+        public long getLinesRemoved() {
+            return LINES_REMOVED.sum();
+        }
+
+        @Override
+        public long getClears() {
+            return CLEARS.sum();
+        }
+    }
+
+    /**
+     * Times each dispatched event. An event that pumps nested events (a modal dialog's loop) is not
+     * recorded itself, so waiting on a dialog does not show up as EDT latency.
+     */
+    private static final class TimedEventQueue extends EventQueue {
+        private long dispatchSequence;
+
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            long sequence = ++dispatchSequence;
+            long start = System.nanoTime();
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                if (dispatchSequence == sequence) {
+                    EDT_DISPATCH.recordSince(start);
+                    if (event instanceof InputEvent) {
+                        long delayMillis = System.currentTimeMillis() - ((InputEvent) event).getWhen();
+                        if (delayMillis >= 0) EDT_INPUT_DELAY.record(delayMillis * 1_000_000);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class MetricsFile {
+        private final LatencyHistogram.Snapshot[] previous = new LatencyHistogram.Snapshot[HISTOGRAMS.length];
+
+        MetricsFile() {
+            for (int i = 0; i < HISTOGRAMS.length; i++) {
+                previous[i] = HISTOGRAMS[i].snapshot();
+            }
+        }
+
+        synchronized void append() {
+            StringBuilder sb = new StringBuilder(1024);
+            String now = Instant.now().toString();
+            for (int i = 0; i < HISTOGRAMS.length; i++) {
+                LatencyHistogram.Snapshot current = HISTOGRAMS[i].snapshot();
+                LatencyHistogram.Snapshot interval = current.minus(previous[i]);
+                previous[i] = current;
+                if (interval.count == 0) continue;
+                sb.append(now).append(' ').append(HISTOGRAMS[i].name())
+                        .append(" count=").append(interval.count)
+                        .append(" p50us=").append(interval.percentile(50) / 1000)
+                        .append(" p99us=").append(interval.percentile(99) / 1000)
+                        .append(" p999us=").append(interval.percentile(99.9) / 1000)
+                        .append(" maxus=").append(interval.max() / 1000)
+                        .append('\n');
+            }
+            sb.append(now).append(" cart linesAdded=").append(LINES_ADDED.sum())
+                    .append(" quantityChanges=").append(QUANTITY_CHANGES.sum())
+                    .append(" linesRemoved=").append(LINES_REMOVED.sum())
+                    .append(" clears=").append(CLEARS.sum())
+                    .append('\n');
+            try {
+                Path dir = KioskFiles.dataDir().resolve("metrics");
+                Files.createDirectories(dir);
+                Path file = dir.resolve("metrics-" + LocalDate.now(ZoneId.systemDefault()) + ".log");
+                try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    out.write(sb.toString());
+                }
+            } catch (IOException e) {
+                System.err.println("Unable to write kiosk metrics: " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The loopback protocol between {@link KioskClient} terminals and a {@link KioskServer}.
+ *
+ * Every message is a frame: int length of the rest, byte type, int tag, then the payload, big-endian.
+ * A terminal tags each request with a number of its own and does not wait for one reply before sending
+ * the next request; replies carry the tag of their request and may come back out of order, since a
+ * checkout takes longer than the requests sent after it. Products are referenced by catalog index, and
+ * {@link #HELLO} checks that both sides mapped the same catalog.
+ *
+ * <pre>
+ * HELLO    long catalog stamp        -> OK or ERROR
+ * FLAGS    int discount flags        (no reply)
+ * ADD      int sku, int units        -> ADDED int units reserved and added
+ * REMOVE   int sku                   (no reply) one unit
+ * CHECKOUT                           -> ORDER
+ * ORDER    long order number, long total, int lines, (int sku, int quantity) per line,
+ *          string error, string print error, string receipt text
+ * ERROR    string message
+ * </pre>
+ * Strings are an int byte count, -1 for null, then UTF-8.
+ */
+final class KioskProtocol {
+    static final int DEFAULT_PORT = 47_700;
+    static final int MAX_FRAME = 1 << 20;
+    /** Length, type and tag. */
+    static final int HEADER_SIZE = 9;
+
+    static final byte HELLO = 1;
+    static final byte FLAGS = 2;
+    static final byte ADD = 3;
+    static final byte REMOVE = 4;
+    static final byte CHECKOUT = 5;
+
+    static final byte OK = 64;
+    static final byte ERROR = 65;
+    static final byte ADDED = 66;
+    static final byte ORDER = 67;
+
+    private KioskProtocol() {
+    }
+
+    /** The payload bytes a request of {@code type} needs at least. */
+    static int requestSize(byte type) {
+        switch (type) {
+            case HELLO: return 8;
+            case FLAGS: return 4;
+            case ADD: return 8;
+            case REMOVE: return 4;
+            default: return 0;
+        }
+    }
+
+    /**
+     * The size of the complete frame at the start of {@code in}, or -1 while it is still arriving.
+     * Throws when the length is implausible, which means the peer is not speaking this protocol.
+     */
+    static int frameSize(ByteBuffer in) throws IOException {
+        if (in.remaining() < 4) return -1;
+        int length = in.getInt(in.position());
+        if (length < HEADER_SIZE - 4 || length > MAX_FRAME) throw new IOException("Bad frame length " + length);
+        return in.remaining() < 4 + length ? -1 : 4 + length;
+    }
+
+    static String getString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length < 0) return null;
+        if (length > in.remaining()) throw new IOException("Bad string length " + length);
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    /** A growable heap buffer frames are written into; {@link #begin} and {@link #end} bracket each frame. */
+    static final class FrameBuffer {
+        private ByteBuffer buffer;
+        private int frameStart = -1;
+
+        FrameBuffer(int capacity) {
+            buffer = ByteBuffer.allocate(capacity);
+        }
+
+        FrameBuffer begin(byte type, int tag) {
+            frameStart = buffer.position();
+            ensure(HEADER_SIZE);
+            buffer.putInt(0).put(type).putInt(tag);
+            return this;
+        }
+
+        FrameBuffer putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+            return this;
+        }
+
+        FrameBuffer putLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+            return this;
+        }
+
+        FrameBuffer putString(String value) {
+            if (value == null) return putInt(-1);
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + bytes.length);
+            buffer.putInt(bytes.length).put(bytes);
+            return this;
+        }
+
+        void end() {
+            buffer.putInt(frameStart, buffer.position() - frameStart - 4);
+            frameStart = -1;
+        }
+
+        boolean isEmpty() {
+            return buffer.position() == 0;
+        }
+
+        /** The written frames, flipped for draining; call {@link #compact} after writing some out. */
+        ByteBuffer flip() {
+            return buffer.flip();
+        }
+
+        void compact() {
+            buffer.compact();
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() >= bytes) return;
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            buffer = bigger.put(buffer);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Server mode: one process holds the catalog, pricing, order journal and inventory ledger, and thin
+ * {@link KioskClient} terminals on the same machine drive their sessions over {@link KioskProtocol}.
+ *
+ * Every connection is a {@link KioskSession} plus two buffers, and one network thread does all of the
+ * sessions' work between selects: cart changes take microseconds, so a thread per terminal would cost more
+ * than it saves. Checkouts run on the shared {@link CheckoutPipeline} and come back to the network thread
+ * through its task queue, so each session stays confined to that thread. A terminal with unread replies
+ * is not read from until they drain. Carts are not journaled in this mode; orders are.
+ *
+ * <pre>java -cp TheRightDrugStoreMedStoree.jar com.mycompany.therightdrugstoremedstoree.KioskServer [--port 47700]</pre>
+ * Terminals then start the kiosk with -Dkiosk.server=PORT.
+ */
+final class KioskServer implements Closeable {
+    private final CatalogStore catalog;
+    private final PricingEngine pricing;
+    private final InventoryLedger ledger;
+    private final CheckoutPipeline checkout;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Set<Connection> connections = new HashSet<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /** Listens on the loopback interface; port 0 picks a free one (see {@link #port}). */
+    KioskServer(CatalogStore catalog, PricingEngine pricing, OrderJournal journal, InventoryLedger ledger, int port)
+            throws IOException {
+        this.catalog = catalog;
+        this.pricing = pricing;
+        this.ledger = ledger;
+        this.checkout = new CheckoutPipeline(pricing, journal);
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 512);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        pricing.addListener(() -> execute(this::repriceAll));
+        thread = new Thread(this::run, "kiosk-server");
+    }
+
+    int port() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /** Runs {@code task} on the network thread. */
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(this::ready);
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("Kiosk server task failed: " + e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Kiosk server stopped: " + e.getMessage());
+        } finally {
+            for (Connection connection : new ArrayList<>(connections)) {
+                connection.close();
+            }
+        }
+    }
+
+    private void ready(SelectionKey key) {
+        if (key.attachment() == null) {
+            accept();
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isWritable()) connection.flush();
+            if (key.isValid() && key.isReadable()) connection.read();
+        } catch (IOException | RuntimeException e) {
+            // Only the terminal that sent something bad, or whose session failed, is dropped.
+            connection.close(e);
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                connections.add(new Connection(channel));
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to accept a terminal: " + e.getMessage());
+        }
+    }
+
+    private void repriceAll() {
+        for (Connection connection : connections) {
+            if (connection.session != null) connection.session.reprice();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.close();
+        selector.close();
+        checkout.shutdown();
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(4096);
+        private final KioskProtocol.FrameBuffer out = new KioskProtocol.FrameBuffer(4096);
+        private KioskSession session;
+        private boolean closed;
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            in.flip();
+            int size;
+            while ((size = KioskProtocol.frameSize(in)) > 0) {
+                int start = in.position();
+                byte type = in.get(start + 4);
+                int tag = in.getInt(start + 5);
+                // The request only sees its own frame, so a short one cannot read into the next.
+                ByteBuffer payload = in.slice(start + KioskProtocol.HEADER_SIZE, size - KioskProtocol.HEADER_SIZE);
+                in.position(start + size);
+                if (payload.remaining() < KioskProtocol.requestSize(type)) {
+                    throw new IOException("Short frame of type " + type);
+                }
+                handle(type, tag, payload);
+            }
+            in.compact();
+            if (!in.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+                in = bigger.put(in.flip());
+            }
+            flush();
+        }
+
+        private void handle(byte type, int tag, ByteBuffer payload) {
+            if (type == KioskProtocol.HELLO) {
+                if (payload.getLong() != catalog.sourceStamp()) {
+                    error(tag, "The terminal's catalog differs from the server's");
+                } else {
+                    if (session == null) session = new KioskSession(catalog, pricing, null, ledger, checkout);
+                    out.begin(KioskProtocol.OK, tag).end();
+                }
+                return;
+            }
+            if (session == null) {
+                error(tag, "Say hello first");
+                return;
+            }
+            switch (type) {
+                case KioskProtocol.FLAGS:
+                    session.setDiscountFlags(payload.getInt());
+                    break;
+                case KioskProtocol.ADD: {
+                    int sku = payload.getInt();
+                    int units = payload.getInt();
+                    if (sku < 0 || sku >= catalog.size() || units <= 0) {
+                        error(tag, "Bad sku or units");
+                        break;
+                    }
+                    int added = session.addToCart(catalog.product(sku), units);
+                    out.begin(KioskProtocol.ADDED, tag).putInt(added).end();
+                    break;
+                }
+                case KioskProtocol.REMOVE: {
+                    int sku = payload.getInt();
+                    if (sku < 0 || sku >= catalog.size()) break;
+                    int row = session.cart().row(catalog.product(sku));
+                    if (row >= 0) session.removeOne(row);
+                    break;
+                }
+                case KioskProtocol.CHECKOUT:
+                    if (!session.placeOrder(result -> ordered(tag, result), KioskServer.this::execute)) {
+                        String error = session.isPlacingOrder() ? CheckoutPipeline.IN_FLIGHT
+                                : session.cart().isEmpty() ? "Your cart is empty." : CheckoutPipeline.BUSY;
+                        reply(tag, new CheckoutPipeline.Result(null, 0, 0, null, error, null));
+                    }
+                    break;
+                default:
+                    error(tag, "Unknown request " + type);
+            }
+        }
+
+        private void ordered(int tag, CheckoutPipeline.Result result) {
+            if (closed) return;
+            try {
+                reply(tag, result);
+                flush();
+            } catch (IOException | RuntimeException e) {
+                close(e);
+            }
+        }
+
+        private void reply(int tag, CheckoutPipeline.Result result) {
+            out.begin(KioskProtocol.ORDER, tag).putLong(result.orderNumber).putLong(result.total);
+            if (result.error == null) {
+                out.putInt(result.order.lines.size());
+                for (CartEntry line : result.order.lines) {
+                    out.putInt(line.product.sku).putInt(line.quantity);
+                }
+            } else {
+                out.putInt(0);
+            }
+            out.putString(result.error).putString(result.printError).putString(result.receiptText).end();
+        }
+
+        private void error(int tag, String message) {
+            out.begin(KioskProtocol.ERROR, tag).putString(message).end();
+        }
+
+        /** Writes what the socket takes and reads again only once every reply is out. */
+        void flush() throws IOException {
+            if (out.isEmpty()) return;
+            channel.write(out.flip());
+            out.compact();
+            key.interestOps(out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+        }
+
+        void close(Exception cause) {
+            if (!(cause instanceof IOException)) System.err.println("Dropping a terminal: " + cause);
+            close();
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            connections.remove(this);
+            if (session != null) session.close();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int port = KioskProtocol.DEFAULT_PORT;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("Unknown option " + args[i]);
+                System.exit(2);
+            }
+        }
+        KioskMetrics.start();
+        CatalogStore catalog = CatalogStore.openDefault((text, color) -> null);
+        PricingEngine pricing = new PricingEngine();
+        try {
+            pricing.install(PriceTable.compile(Promotions.load(), catalog));
+        } catch (IOException e) {
+            System.err.println("Unable to load the promotions, only Senior/PWD discounts apply: " + e.getMessage());
+        }
+        Promotions.watch(pricing, catalog);
+        OrderJournal journal = OrderJournal.open(KioskFiles.dataDir().resolve("journal"), catalog.sourceStamp());
+        InventoryLedger ledger = InventoryLedger.fromCatalog(catalog, journal.recovery().sold);
+        ledger.startExpiry();
+
+        KioskServer server = new KioskServer(catalog, pricing, journal, ledger, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                journal.close();
+            } catch (IOException ignored) {}
+        }, "kiosk-server-close"));
+        server.start();
+        System.out.println("Serving " + catalog.size() + " products on " + server.server.getLocalAddress());
+    }
+}
@@ -0,0 +1,149 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * One customer's session without any Swing: browsing, Senior/PWD discounts, the cart and checkout.
+ * With an {@link InventoryLedger}, every unit in the cart is reserved through the session's hold, and
+ * checkout sells the order out of it.
+ * {@link KioskSystem} drives a session from the EDT, a {@link KioskServer} drives one per connected
+ * terminal from its network thread, and the load generator drives many headless ones, so all go through
+ * the same paths. A session is not thread-safe and belongs to one thread.
+ */
+final class KioskSession implements CartSession {
+    private final CatalogStore catalog;
+    private final CartModel cart;
+    private final OrderJournal journal;
+    private final InventoryLedger.Hold hold;
+    private final CheckoutPipeline checkout;
+    private boolean placingOrder;
+
+    /**
+     * {@code catalog}, {@code journal} and {@code ledger} may be null; without a ledger stock is not checked.
+     * The journal only records the cart; orders are journaled by {@code checkout}.
+     */
+    KioskSession(CatalogStore catalog, PricingEngine pricing, OrderJournal journal, InventoryLedger ledger,
+                 CheckoutPipeline checkout) {
+        this.catalog = catalog;
+        this.journal = journal;
+        this.hold = ledger != null ? ledger.open() : null;
+        this.checkout = checkout;
+        this.cart = new CartModel(pricing);
+        cart.addListener(KioskMetrics.cartCounters());
+        if (journal != null) cart.addListener(this::journalCartChange);
+    }
+
+    @Override
+    public CartModel cart() {
+        return cart;
+    }
+
+    /** Restores the discount flags and the in-flight cart found by the journal's replay. */
+    void recover(OrderJournal.Recovery recovery) {
+        if (catalog == null) return;
+        cart.setDiscountFlags(recovery.cartFlags);
+        cart.restore(recovery.cart.snapshot(), sku -> sku < catalog.size() ? catalog.product(sku) : null);
+        if (hold == null) return;
+        for (int row = cart.size() - 1; row >= 0; row--) {
+            int quantity = cart.quantity(row);
+            int reserved = hold.reserve(cart.product(row).sku, quantity);
+            if (reserved < quantity) cart.remove(cart.product(row), quantity - reserved);
+        }
+    }
+
+    @Override
+    public List<Product> browse(int category) {
+        return catalog != null ? catalog.category(category) : Collections.<Product>emptyList();
+    }
+
+    @Override
+    public void setDiscountFlags(int flags) {
+        cart.setDiscountFlags(flags);
+    }
+
+    @Override
+    public void reprice() {
+        cart.reprice();
+    }
+
+    /** Adds as many of {@code units} as are in stock as one cart change and returns how many that was. */
+    int addToCart(Product product, int units) {
+        int reserved = hold != null ? hold.reserve(product.sku, units) : units;
+        if (reserved > 0) cart.add(product, reserved);
+        return reserved;
+    }
+
+    @Override
+    public void addToCart(Product product, int units, IntConsumer onAdded, Executor callbacks) {
+        int added = addToCart(product, units);
+        callbacks.execute(() -> onAdded.accept(added));
+    }
+
+    @Override
+    public void removeOne(int row) {
+        if (row < 0 || row >= cart.size()) return;
+        if (hold != null) hold.release(cart.product(row).sku, 1);
+        cart.decrement(row);
+    }
+
+    /** Snapshot of the cart to hand to the checkout pipeline, or null when the cart is empty. */
+    CheckoutPipeline.Order order() {
+        return cart.isEmpty() ? null : CheckoutPipeline.Order.snapshot(cart, hold);
+    }
+
+    @Override
+    public boolean placeOrder(Consumer<CheckoutPipeline.Result> onDone, Executor callbacks) {
+        if (placingOrder) return false;
+        CheckoutPipeline.Order order = order();
+        if (order == null) return false;
+        placingOrder = checkout.submit(order, result -> {
+            placingOrder = false;
+            orderPlaced(result);
+            onDone.accept(result);
+        }, callbacks);
+        return placingOrder;
+    }
+
+    @Override
+    public boolean isPlacingOrder() {
+        return placingOrder;
+    }
+
+    /** Takes the ordered quantities out of the cart; lines added while the order was in flight stay. */
+    void orderPlaced(CheckoutPipeline.Result result) {
+        if (result.error != null) return;
+        for (CartEntry line : result.order.lines) {
+            cart.remove(line.product, line.quantity);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (hold != null) hold.close();
+    }
+
+    private void journalCartChange(int type, int row, Product product, int quantity) {
+        switch (type) {
+            case CartModel.INSERTED:
+            case CartModel.UPDATED:
+            case CartModel.DELETED:
+                journal.cartLine(product.sku, quantity);
+                break;
+            case CartModel.CLEARED:
+                journal.cartClear();
+                break;
+            case CartModel.RESTORED:
+                journal.cartClear();
+                for (int i = 0; i < cart.size(); i++) {
+                    journal.cartLine(cart.product(i).sku, cart.quantity(i));
+                }
+                break;
+            default:
+                journal.cartFlags(cart.discountFlags());
+        }
+    }
+}
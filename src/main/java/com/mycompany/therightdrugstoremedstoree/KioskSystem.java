@@ -2,63 +2,42 @@ package com.mycompany.therightdrugstoremedstoree;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.util.*;
 import java.util.List;
 
 public class KioskSystem extends JFrame {
-    private static final double DISCOUNT_RATE = 0.20;
-
-    static class Product {
-        String name;
-        double price;
-        ImageIcon image;
-        boolean isRx;
-
-        Product(String name, double price, ImageIcon image, boolean isRx) {
-            this.name = name;
-            this.price = price;
-            this.image = image;
-            this.isRx = isRx;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (!(o instanceof Product)) return false;
-            Product product = (Product) o;
-            return Objects.equals(name, product.name);
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(name);
-        }
-    }
-
-    static class CartEntry {
-        Product product;
-        int quantity;
-
-        CartEntry(Product product) {
-            this.product = product;
-            this.quantity = 1;
-        }
-    }
-
-    private final List<Product> brandedProducts = new ArrayList<>();
-    private final List<Product> genericProducts = new ArrayList<>();
-    private final List<Product> rxProducts = new ArrayList<>();
-
-    private final Map<Product, CartEntry> cart = new LinkedHashMap<>();
-
-    private JPanel productsPanel;
+    private static final Font HEADER_FONT = new Font("Segoe UI", Font.BOLD, 32);
+    private static final Font CONTROL_FONT = new Font("Segoe UI", Font.PLAIN, 18);
+    private static final Font BUTTON_FONT = new Font("Segoe UI", Font.BOLD, 18);
+    private static final Font STATUS_FONT = new Font("Segoe UI", Font.PLAIN, 16);
+    private static final Font DIALOG_BUTTON_FONT = new Font("Segoe UI", Font.BOLD, 16);
+    private static final Font REMOVE_FONT = new Font("Segoe UI", Font.BOLD, 14);
+    private static final Font RECEIPT_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 14);
+
+    private CatalogStore catalog;
+    private StartupSnapshot snapshot;
+    private OrderJournal journal;
+    private InventoryLedger ledger;
+
+    private final PricingEngine pricing = new PricingEngine();
+    private volatile boolean promotionsLoaded;
+    private CartSession session;
+    private CartModel cart;
+    private CartTableModel cartTableModel;
+    private JDialog cartDialog;
+    private final Toast toast = new Toast(this);
+
+    private ProductGrid productGrid;
     private JCheckBox seniorCheckbox;
     private JCheckBox pwdCheckbox;
     private JComboBox<String> categoryCombo;
+    private JTextField searchField;
+    private final ProductSearchIndex searchIndex = new ProductSearchIndex();
     private JLabel cartStatusLabel;
 
     public KioskSystem() {
@@ -70,7 +49,7 @@ public class KioskSystem extends JFrame {
         setLayout(new BorderLayout());
 
         JLabel header = new JLabel("Pharmacy Kiosk", SwingConstants.CENTER);
-        header.setFont(new Font("Segoe UI", Font.BOLD, 32));
+        header.setFont(HEADER_FONT);
         header.setBorder(new EmptyBorder(20, 10, 20, 10));
 
         // Top controls panel with category & discounts
@@ -83,33 +62,39 @@ public class KioskSystem extends JFrame {
         gbc.gridx = 0;
         gbc.gridy = 0;
         JLabel categoryLabel = new JLabel("Select Category:");
-        categoryLabel.setFont(new Font("Segoe UI", Font.PLAIN, 18));
+        categoryLabel.setFont(CONTROL_FONT);
         topPanel.add(categoryLabel, gbc);
 
-        categoryCombo = new JComboBox<>(new String[]{"Branded", "Generic", "Rx"});
-        categoryCombo.setFont(new Font("Segoe UI", Font.PLAIN, 18));
+        categoryCombo = new JComboBox<>(CatalogStore.CATEGORIES);
+        categoryCombo.setFont(CONTROL_FONT);
         gbc.gridx = 1;
         topPanel.add(categoryCombo, gbc);
 
         seniorCheckbox = new JCheckBox("Senior Citizen Discount");
-        seniorCheckbox.setFont(new Font("Segoe UI", Font.PLAIN, 18));
+        seniorCheckbox.setFont(CONTROL_FONT);
         gbc.gridx = 2;
         topPanel.add(seniorCheckbox, gbc);
 
         pwdCheckbox = new JCheckBox("PWD Discount");
-        pwdCheckbox.setFont(new Font("Segoe UI", Font.PLAIN, 18));
+        pwdCheckbox.setFont(CONTROL_FONT);
         gbc.gridx = 3;
         topPanel.add(pwdCheckbox, gbc);
 
+        searchField = new JTextField(14);
+        searchField.setFont(CONTROL_FONT);
+        searchField.setToolTipText("Search all products by name");
+        gbc.gridx = 4;
+        topPanel.add(searchField, gbc);
+
         JPanel northPanel = new JPanel(new BorderLayout());
         northPanel.add(header, BorderLayout.NORTH);
         northPanel.add(topPanel, BorderLayout.SOUTH);
         add(northPanel, BorderLayout.NORTH);
 
-        productsPanel = new JPanel();
-        productsPanel.setBackground(Color.WHITE);
+        productGrid = new ProductGrid(this::addToCart, pricing);
 
-        JScrollPane scrollPane = new JScrollPane(productsPanel);
+        JScrollPane scrollPane = new JScrollPane(productGrid);
+        scrollPane.getViewport().setBackground(Color.WHITE);
         scrollPane.getVerticalScrollBar().setUnitIncrement(20);
         scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
         add(scrollPane, BorderLayout.CENTER);
@@ -122,236 +107,256 @@ public class KioskSystem extends JFrame {
         bgbc.anchor = GridBagConstraints.CENTER;
 
         JButton viewCartBtn = new JButton("View Cart");
-        viewCartBtn.setFont(new Font("Segoe UI", Font.BOLD, 18));
+        viewCartBtn.setFont(BUTTON_FONT);
         bgbc.gridx = 0;
         bottomPanel.add(viewCartBtn, bgbc);
 
         cartStatusLabel = new JLabel("Cart is empty");
-        cartStatusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+        cartStatusLabel.setFont(STATUS_FONT);
         bgbc.gridx = 1;
         bottomPanel.add(cartStatusLabel, bgbc);
 
         add(bottomPanel, BorderLayout.SOUTH);
 
-        populateProducts();
+        loadCatalog();
+        pricing.addListener(() -> SwingUtilities.invokeLater(this::promotionsChanged));
+        session = connectToServer();
+        if (session == null) session = openLocalSession();
+        cart = session.cart();
+        cartTableModel = new CartTableModel(cart);
+        cart.addListener((type, row, product, quantity) -> updateCartStatus());
+        seniorCheckbox.setSelected((cart.discountFlags() & PricingEngine.SENIOR) != 0);
+        pwdCheckbox.setSelected((cart.discountFlags() & PricingEngine.PWD) != 0);
+
+        categoryCombo.addActionListener(e -> {
+            if (searchField.getText().isEmpty()) refreshProducts();
+            else searchField.setText("");
+        });
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchProducts();
+            }
 
-        categoryCombo.addActionListener(e -> refreshProducts());
-        seniorCheckbox.addItemListener(e -> refreshProducts());
-        pwdCheckbox.addItemListener(e -> refreshProducts());
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchProducts();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                searchProducts();
+            }
+        });
+        seniorCheckbox.addItemListener(e -> applyDiscountFlags());
+        pwdCheckbox.addItemListener(e -> applyDiscountFlags());
 
         viewCartBtn.addActionListener(e -> showCartDialog());
 
+        productGrid.whenFirstPainted(this::firstPainted);
         refreshProducts();
+        startScanner();
     }
 
-    private void populateProducts() {
-        brandedProducts.clear();
-        genericProducts.clear();
-        rxProducts.clear();
-
-        // 15 branded products with fallback icons
-        brandedProducts.add(new Product("Panadol Extra", 120.00, createSampleIcon("P", new Color(0x1E90FF)), false));
-        brandedProducts.add(new Product("Neozep", 130.00, createSampleIcon("N", new Color(0x0077CC)), false));
-        brandedProducts.add(new Product("Solmux", 115.00, createSampleIcon("S", new Color(0x005FA3)), false));
-        brandedProducts.add(new Product("Biogesic", 140.00, createSampleIcon("B", new Color(0x00457C)), false));
-        brandedProducts.add(new Product("Decolgen", 125.50, createSampleIcon("D", new Color(0x003357)), false));
-        brandedProducts.add(new Product("Neurobion", 135.00, createSampleIcon("Ne", new Color(0x00253F)), false));
-        brandedProducts.add(new Product("Ceelin", 128.00, createSampleIcon("C", new Color(0x001A2A)), false));
-        brandedProducts.add(new Product("Solmux Forte", 138.00, createSampleIcon("SF", new Color(0x001318)), false));
-        brandedProducts.add(new Product("Tuseran", 145.00, createSampleIcon("T", new Color(0x000D11)), false));
-        brandedProducts.add(new Product("Vicks VapoRub", 150.00, createSampleIcon("V", new Color(0x000708)), false));
-        brandedProducts.add(new Product("Voltaren", 155.00, createSampleIcon("Vo", new Color(0x000404)), false));
-        brandedProducts.add(new Product("Tuseran Forte", 160.00, createSampleIcon("TF", new Color(0x000202)), false));
-        brandedProducts.add(new Product("Redoxon", 165.00, createSampleIcon("R", new Color(0x000101)), false));
-        brandedProducts.add(new Product("Biolax", 170.00, createSampleIcon("Bi", new Color(0x000000)), false));
-        brandedProducts.add(new Product("Alaxan", 175.00, createSampleIcon("A", new Color(0x001122)), false));
-
-        // 15 generic products with fallback icons
-        genericProducts.add(new Product("Paracetamol", 55.00, createSampleIcon("Pa", new Color(0x228B22)), false));
-        genericProducts.add(new Product("Ascorbic Acid", 58.00, createSampleIcon("Aa", new Color(0x2E8B57)), false));
-        genericProducts.add(new Product("Ibuprofen", 60.00, createSampleIcon("I", new Color(0x3CB371)), false));
-        genericProducts.add(new Product("Cetirizine", 62.00, createSampleIcon("Ce", new Color(0x66CDAA)), false));
-        genericProducts.add(new Product("Loperamide", 65.00, createSampleIcon("Lo", new Color(0x8FBC8F)), false));
-        genericProducts.add(new Product("Metformin", 67.00, createSampleIcon("Me", new Color(0x90EE90)), false));
-        genericProducts.add(new Product("Omeprazole", 70.00, createSampleIcon("O", new Color(0x98FB98)), false));
-        genericProducts.add(new Product("Amoxicillin", 72.00, createSampleIcon("Am", new Color(0x00FF7F)), false));
-        genericProducts.add(new Product("Simvastatin", 75.00, createSampleIcon("Si", new Color(0x3CB371)), false));
-        genericProducts.add(new Product("Furosemide", 77.00, createSampleIcon("Fu", new Color(0x2E8B57)), false));
-        genericProducts.add(new Product("Atenolol", 80.00, createSampleIcon("At", new Color(0x006400)), false));
-        genericProducts.add(new Product("Ciprofloxacin", 82.00, createSampleIcon("Ci", new Color(0x008000)), false));
-        genericProducts.add(new Product("Clindamycin", 85.00, createSampleIcon("Cl", new Color(0x228B22)), false));
-        genericProducts.add(new Product("Hydrochlorothiazide", 87.00, createSampleIcon("Hy", new Color(0x32CD32)), false));
-        genericProducts.add(new Product("Prednisone", 90.00, createSampleIcon("Pr", new Color(0x7CFC00)), false));
-
-        // 15 Rx products with fallback icons
-        rxProducts.add(new Product("Amoxicillin RX", 155.00, createSampleIcon("AR", new Color(0xB22222)), true));
-        rxProducts.add(new Product("Ibuprofen RX", 160.00, createSampleIcon("IR", new Color(0x8B0000)), true));
-        rxProducts.add(new Product("Metformin RX", 165.00, createSampleIcon("MR", new Color(0xA52A2A)), true));
-        rxProducts.add(new Product("Atorvastatin RX", 170.00, createSampleIcon("AR", new Color(0xFF0000)), true));
-        rxProducts.add(new Product("Lisinopril RX", 175.00, createSampleIcon("LR", new Color(0xDC143C)), true));
-        rxProducts.add(new Product("Omeprazole RX", 180.00, createSampleIcon("OR", new Color(0xB03060)), true));
-        rxProducts.add(new Product("Simvastatin RX", 185.00, createSampleIcon("SR", new Color(0xC71585)), true));
-        rxProducts.add(new Product("Hydrochlorothiazide RX", 190.00, createSampleIcon("HR", new Color(0xDB7093)), true));
-        rxProducts.add(new Product("Prednisone RX", 195.00, createSampleIcon("PR", new Color(0xFF69B4)), true));
-        rxProducts.add(new Product("Clindamycin RX", 200.00, createSampleIcon("CR", new Color(0xFF1493)), true));
-        rxProducts.add(new Product("Azithromycin RX", 205.00, createSampleIcon("AR", new Color(0xFF6347)), true));
-        rxProducts.add(new Product("Levofloxacin RX", 210.00, createSampleIcon("LR", new Color(0xFF4500)), true));
-        rxProducts.add(new Product("Doxycycline RX", 215.00, createSampleIcon("DR", new Color(0xE9967A)), true));
-        rxProducts.add(new Product("Metronidazole RX", 220.00, createSampleIcon("MR", new Color(0xFA8072)), true));
-        rxProducts.add(new Product("Ciprofloxacin RX", 225.00, createSampleIcon("CR", new Color(0xF08080)), true));
+    private void loadCatalog() {
+        try {
+            catalog = CatalogStore.openDefault(
+                    (text, color) -> IconCache.shared().icon(text, color, ProductGrid.ICON_SIZE));
+            loadPhotos();
+            snapshot = StartupSnapshot.open(catalog, ProductGrid.ICON_SIZE);
+            if (snapshot != null) {
+                IconCache.shared().setAtlas(snapshot);
+                searchIndex.load(snapshot.searchIndex());
+                if (!snapshot.matches(catalog)) searchIndex.update(catalog);
+            } else {
+                searchIndex.build(catalog);
+            }
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                    "Unable to load the product catalog: " + e.getMessage(),
+                    "Catalog",
+                    JOptionPane.ERROR_MESSAGE);
+        }
     }
 
-    private ImageIcon createSampleIcon(String text, Color bgColor) {
-        int width = 120;
-        int height = 120;
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2 = image.createGraphics();
-
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2.setColor(bgColor);
-        g2.fillRoundRect(0, 0, width, height, 20, 20);
-
-        g2.setColor(Color.WHITE);
-        g2.setFont(new Font("Segoe UI", Font.BOLD, 36));
-        FontMetrics fm = g2.getFontMetrics();
-        int textWidth = fm.stringWidth(text);
-        int textHeight = fm.getAscent();
-        g2.drawString(text, (width - textWidth) / 2, (height + textHeight) / 2 - 10);
-
-        g2.dispose();
-        return new ImageIcon(image);
+    private void loadPhotos() {
+        try {
+            catalog.setPhotos(ProductPhotos.fromProperties(ProductGrid.ICON_SIZE));
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                    "Unable to load the product photos, showing icons instead: " + e.getMessage(),
+                    "Photos",
+                    JOptionPane.ERROR_MESSAGE);
+        }
     }
 
-    private void refreshProducts() {
-        productsPanel.removeAll();
-
-        List<Product> currentList;
-        String selectedCategory = (String) categoryCombo.getSelectedItem();
-        if ("Branded".equals(selectedCategory)) currentList = brandedProducts;
-        else if ("Generic".equals(selectedCategory)) currentList = genericProducts;
-        else currentList = rxProducts;
-
-        boolean senior = seniorCheckbox.isSelected();
-        boolean pwd = pwdCheckbox.isSelected();
-        boolean hasDiscount = senior || pwd;
-
-        // Limit to first 15 items exactly if list is longer, else use al
-        List<Product> displayList = currentList.size() > 15 ? currentList.subList(0, 15) : new ArrayList<>(currentList);
-
-        for (Product p : displayList) {
-            JPanel pPanel = new JPanel();
-            pPanel.setPreferredSize(new Dimension(220, 260));
-            pPanel.setLayout(new BorderLayout());
-            pPanel.setBackground(Color.WHITE);
-            pPanel.setBorder(BorderFactory.createCompoundBorder(
-                    BorderFactory.createLineBorder(new Color(0xBBBBBB), 1, true),
-                    new EmptyBorder(10, 10, 10, 10)
-            ));
-
-            JLabel imgLabel = new JLabel(p.image);
-            imgLabel.setHorizontalAlignment(SwingConstants.CENTER);
-            imgLabel.setPreferredSize(new Dimension(220, 140));
-            pPanel.add(imgLabel, BorderLayout.NORTH);
-
-            JLabel nameLabel = new JLabel("<html><div style='text-align: center;'>" + p.name + "</div></html>", SwingConstants.CENTER);
-            nameLabel.setFont(new Font("Segoe UI", Font.BOLD, 18));
-            nameLabel.setBorder(new EmptyBorder(10, 5, 10, 5));
-            pPanel.add(nameLabel, BorderLayout.CENTER);
-
-            double priceToShow = p.price;
-            String priceText;
-            if (hasDiscount) {
-                priceToShow = p.price * (1 - DISCOUNT_RATE);
-                priceText = String.format("<html><div style='text-align: center;'>Price: <s>₱%.2f</s><br><span style='color: #CC0000;'>₱%.2f (Discounted)</span></div></html>", p.price, priceToShow);
-            } else {
-                priceText = String.format("Price: ₱%.2f", p.price);
+    /**
+     * Compiles the promotions on a thread of their own once the first screen is up, since that takes a pass
+     * over the catalog. Until they are installed the grid shows list prices and orders wait for them.
+     */
+    private void loadPromotions() {
+        Thread loader = new Thread(() -> {
+            try {
+                pricing.install(PriceTable.compile(Promotions.load(), catalog));
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                        "Unable to load the promotions, only Senior/PWD discounts apply: " + e.getMessage(),
+                        "Promotions",
+                        JOptionPane.ERROR_MESSAGE));
+            } finally {
+                promotionsLoaded = true;
             }
-            JLabel priceLabel = new JLabel(priceText, SwingConstants.CENTER);
-            priceLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
-            priceLabel.setBorder(new EmptyBorder(5, 5, 5, 5));
-            pPanel.add(priceLabel, BorderLayout.SOUTH);
-
-            pPanel.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
-            pPanel.addMouseListener(new MouseAdapter() {
-                @Override
-                public void mouseClicked(MouseEvent e) {
-                    addToCart(p);
-                }
-            });
-
-            productsPanel.add(pPanel);
+            Promotions.watch(pricing, catalog);
+        }, "promotions-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void promotionsChanged() {
+        productGrid.reprice();
+        session.reprice();
+    }
+
+    private void startScanner() {
+        if (catalog == null) return;
+        new BarcodeScanner(new ScanBatcher(catalog, session), toast).install();
+        String simulate = System.getProperty("kiosk.scanner.simulate");
+        if (simulate != null) KeystrokeSource.startTyping(catalog, Double.parseDouble(simulate));
+    }
+
+    private void firstPainted() {
+        KioskMetrics.firstPaint();
+        loadPromotions();
+        if (catalog != null && (snapshot == null || !snapshot.matches(catalog))) {
+            StartupSnapshot.writeInBackground(catalog, searchIndex, IconCache.shared(), ProductGrid.ICON_SIZE);
         }
+    }
 
-        productsPanel.setLayout(new GridLayout(0, 4, 20, 20)); // 4 items per row
-        productsPanel.revalidate();
-        productsPanel.repaint();
+    /** With -Dkiosk.server=PORT the session lives in a {@link KioskServer}; returns null otherwise. */
+    private CartSession connectToServer() {
+        String port = System.getProperty("kiosk.server");
+        if (port == null || catalog == null) return null;
+        try {
+            return KioskClient.connect(Integer.parseInt(port), catalog, pricing);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                    "Unable to reach the kiosk server, running on its own: " + e.getMessage(),
+                    "Server",
+                    JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
 
-        updateCartStatus();
+    private KioskSession openLocalSession() {
+        openJournal();
+        openLedger();
+        KioskSession local = new KioskSession(catalog, pricing, journal, ledger, new CheckoutPipeline(pricing, journal));
+        if (journal != null) local.recover(journal.recovery());
+        return local;
+    }
+
+    private void openJournal() {
+        if (catalog == null) return;
+        try {
+            journal = OrderJournal.open(KioskFiles.dataDir().resolve("journal"), catalog.sourceStamp());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                    "Unable to open the order journal, orders will not be saved: " + e.getMessage(),
+                    "Orders",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                journal.close();
+            } catch (IOException ignored) {}
+        }, "order-journal-close"));
+    }
+
+    /** Stock starts from the catalog's export, less what the journal says was ordered since. */
+    private void openLedger() {
+        if (catalog == null) return;
+        ledger = InventoryLedger.fromCatalog(catalog,
+                journal != null ? journal.recovery().sold : new CartLines());
+        ledger.startExpiry();
+    }
+
+    private void refreshProducts() {
+        long start = System.nanoTime();
+        List<Product> currentList = session.browse(categoryCombo.getSelectedIndex());
+
+        applyDiscountFlags();
+        productGrid.setProducts(currentList);
+        KioskMetrics.REFRESH_PRODUCTS.recordSince(start);
+    }
+
+    private void searchProducts() {
+        String query = searchField.getText().trim();
+        if (query.isEmpty() || catalog == null) {
+            searchIndex.cancel();
+            refreshProducts();
+            return;
+        }
+        searchIndex.search(query, ids -> productGrid.setProducts(catalog.products(ids)));
+    }
+
+    private void applyDiscountFlags() {
+        int flags = discountFlags();
+        productGrid.setDiscountFlags(flags);
+        session.setDiscountFlags(flags);
+    }
+
+    private int discountFlags() {
+        return PricingEngine.discountFlags(seniorCheckbox.isSelected(), pwdCheckbox.isSelected());
     }
 
     private void addToCart(Product product) {
-        cart.compute(product, (k, v) -> {
-            if (v == null) return new CartEntry(product);
-            v.quantity++;
-            return v;
-        });
-        JOptionPane.showMessageDialog(this,
-                product.name + " added to cart!",
-                "Added",
-                JOptionPane.INFORMATION_MESSAGE);
-        updateCartStatus();
+        session.addToCart(product, 1, added -> {
+            if (added > 0) {
+                toast.show(product.name + " added to cart!");
+            } else {
+                toast.show("Sorry, " + product.name + " is out of stock.");
+            }
+        }, SwingUtilities::invokeLater);
     }
 
     private void updateCartStatus() {
-        int totalItems = cart.values().stream().mapToInt(e -> e.quantity).sum();
-        cartStatusLabel.setText("Cart: " + totalItems + " item" + (totalItems != 1 ? "s" : ""));
+        cartStatusLabel.setText(cartStatusText(cart));
+    }
+
+    static String cartStatusText(CartModel cart) {
+        int totalItems = cart.itemCount();
+        return "Cart: " + totalItems + " item" + (totalItems != 1 ? "s" : "");
     }
 
     private void showCartDialog() {
         if (cart.isEmpty()) {
-            JOptionPane.showMessageDialog(this,
-                    "Your cart is empty.",
-                    "Cart",
-                    JOptionPane.INFORMATION_MESSAGE);
+            toast.show("Your cart is empty.");
             return;
         }
 
-        JPanel panel = new JPanel(new BorderLayout(10, 10));
-        panel.setPreferredSize(new Dimension(480, 350));
-
-        String[] columnNames = {"Product", "Unit Price", "Quantity", "Subtotal", "Remove"};
-        Object[][] data = new Object[cart.size()][5];
-        boolean hasDiscount = seniorCheckbox.isSelected() || pwdCheckbox.isSelected();
-
-        List<CartEntry> entries = new ArrayList<>(cart.values());
-
-        for (int i = 0; i < entries.size(); i++) {
-            CartEntry entry = entries.get(i);
-            double unitPrice = entry.product.price;
-            if (hasDiscount) unitPrice *= (1 - DISCOUNT_RATE);
-            double subtotal = unitPrice * entry.quantity;
-            data[i][0] = entry.product.name;
-            data[i][1] = String.format("₱%.2f", unitPrice);
-            data[i][2] = entry.quantity;
-            data[i][3] = String.format("₱%.2f", subtotal);
-            data[i][4] = "Remove";
+        long start = System.nanoTime();
+        if (cartDialog == null) {
+            cartDialog = createCartDialog();
         }
+        cartDialog.setLocationRelativeTo(this);
+        KioskMetrics.SHOW_CART_DIALOG.recordSince(start);
+        cartDialog.setVisible(true);
+    }
 
-        DefaultTableModel model = new DefaultTableModel(data, columnNames) {
-            public boolean isCellEditable(int row, int column) {
-                return column == 4;
-            }
-        };
+    private JDialog createCartDialog() {
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setPreferredSize(new Dimension(480, 350));
 
-        JTable table = new JTable(model);
+        JTable table = new JTable(cartTableModel);
         table.getColumn("Remove").setCellRenderer(new ButtonRenderer());
-        table.getColumn("Remove").setCellEditor(new ButtonEditor(new JCheckBox(), this, entries, model, cart));
+        table.getColumn("Remove").setCellEditor(new ButtonEditor(new JCheckBox(), session));
 
         JScrollPane scroll = new JScrollPane(table);
         panel.add(scroll, BorderLayout.CENTER);
 
         JButton orderBtn = new JButton("Place Order");
-        orderBtn.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        orderBtn.setFont(DIALOG_BUTTON_FONT);
         JPanel btnPanel = new JPanel();
         btnPanel.add(orderBtn);
         panel.add(btnPanel, BorderLayout.SOUTH);
@@ -359,83 +364,72 @@ public class KioskSystem extends JFrame {
         JDialog dialog = new JDialog(this, "Cart Contents", true);
         dialog.setContentPane(panel);
         dialog.pack();
-        dialog.setLocationRelativeTo(this);
 
         orderBtn.addActionListener(e -> {
-            dialog.dispose();
-            showReceiptDialog();
+            if (table.isEditing()) table.getCellEditor().stopCellEditing();
+            dialog.setVisible(false);
+            placeOrder();
         });
 
-        dialog.setVisible(true);
+        return dialog;
     }
 
-    private void showReceiptDialog() {
+    private void placeOrder() {
         if (cart.isEmpty()) {
-            JOptionPane.showMessageDialog(this,
-                    "Your cart is empty.",
-                    "Receipt",
-                    JOptionPane.INFORMATION_MESSAGE);
+            toast.show("Your cart is empty.");
             return;
         }
-
-        boolean senior = seniorCheckbox.isSelected();
-        boolean pwd = pwdCheckbox.isSelected();
-        boolean hasDiscount = senior || pwd;
-
-        boolean hasRx = cart.values().stream().anyMatch(entry -> entry.product.isRx);
-
-        StringBuilder sb = new StringBuilder("<html><h2>Receipt</h2><table border='1' cellpadding='5' style='border-collapse: collapse;'>");
-        sb.append("<tr><th>Product</th><th>Unit Price</th><th>Quantity</th><th>Subtotal</th></tr>");
-
-        double total = 0;
-        for (CartEntry entry : cart.values()) {
-            double unitPrice = entry.product.price;
-            if (hasDiscount) unitPrice *= (1 - DISCOUNT_RATE);
-            double subtotal = unitPrice * entry.quantity;
-            total += subtotal;
-            sb.append("<tr>")
-                    .append("<td>").append(entry.product.name).append("</td>")
-                    .append("<td>₱").append(String.format("%.2f", unitPrice)).append("</td>")
-                    .append("<td>").append(entry.quantity).append("</td>")
-                    .append("<td>₱").append(String.format("%.2f", subtotal)).append("</td>")
-                    .append("</tr>");
+        if (session.isPlacingOrder()) {
+            toast.show(CheckoutPipeline.IN_FLIGHT);
+            return;
         }
-        sb.append("<tr><td colspan='3' style='text-align:right; font-weight:bold;'>Total</td><td style='font-weight:bold;'>₱")
-                .append(String.format("%.2f", total))
-                .append("</td></tr>");
-
-        if (hasDiscount) {
-            sb.append("<tr><td colspan='4' style='color: #CC0000; text-align:center;'>Discount applied: 20% off</td></tr>");
+        if (!promotionsLoaded) {
+            toast.show("Prices are still loading, please try again in a moment.");
+            return;
         }
-
-        if (hasRx) {
-            sb.append("<tr><td colspan='4' style='color: #CC0000; text-align:center; font-weight:bold; padding-top: 10px;'>")
-              .append("Notice: For RX products, please show the doctor's prescription during payment.")
-              .append("</td></tr>");
+        if (!session.placeOrder(this::orderPlaced, SwingUtilities::invokeLater)) {
+            toast.show(CheckoutPipeline.BUSY);
+            return;
         }
+        toast.show("Placing your order...");
+    }
 
-        sb.append("</table></html>");
+    private void orderPlaced(CheckoutPipeline.Result result) {
+        if (result.error != null) {
+            toast.show(result.error);
+            return;
+        }
+        toast.show(result.printError != null
+                ? "Order placed, but the receipt could not be printed: " + result.printError
+                : "Order placed. Total " + Money.format(result.total));
+        showReceipt(result.receiptText);
+    }
 
-        JTextPane textPane = new JTextPane();
-        textPane.setContentType("text/html");
-        textPane.setText(sb.toString());
-        textPane.setEditable(false);
-        textPane.setPreferredSize(new Dimension(550, 400));
-        textPane.setBackground(null);
-        textPane.setBorder(null);
+    private void showReceipt(String receiptText) {
+        long start = System.nanoTime();
+        JTextArea textArea = new JTextArea(receiptText);
+        textArea.setFont(RECEIPT_FONT);
+        textArea.setEditable(false);
+        textArea.setBackground(null);
+        textArea.setBorder(new EmptyBorder(10, 10, 10, 10));
 
-        JOptionPane.showMessageDialog(this, new JScrollPane(textPane), "Receipt", JOptionPane.PLAIN_MESSAGE);
+        JScrollPane scroll = new JScrollPane(textArea);
+        scroll.setPreferredSize(new Dimension(480, 400));
 
-        cart.clear();
-        updateCartStatus();
-        refreshProducts();
+        JDialog dialog = new JDialog(this, "Receipt", false);
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        dialog.setContentPane(scroll);
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+        KioskMetrics.SHOW_RECEIPT.recordSince(start);
     }
 
     static class ButtonRenderer extends JButton implements javax.swing.table.TableCellRenderer {
         ButtonRenderer() {
             setOpaque(true);
             setText("Remove");
-            setFont(new Font("Segoe UI", Font.BOLD, 14));
+            setFont(REMOVE_FONT);
             setForeground(Color.RED.darker());
         }
         public Component getTableCellRendererComponent(JTable table, Object value,
@@ -447,20 +441,14 @@ public class KioskSystem extends JFrame {
     static class ButtonEditor extends DefaultCellEditor {
         private JButton button;
         private boolean clicked;
-        private final KioskSystem kiosk;
-        private List<CartEntry> entries;
-        private DefaultTableModel model;
-        private Map<Product, CartEntry> cart;
+        private final CartSession session;
         private int selectedRow;
 
-        ButtonEditor(JCheckBox checkBox, KioskSystem kiosk, List<CartEntry> entries, DefaultTableModel model, Map<Product, CartEntry> cart) {
+        ButtonEditor(JCheckBox checkBox, CartSession session) {
             super(checkBox);
-            this.kiosk = kiosk;
-            this.entries = entries;
-            this.model = model;
-            this.cart = cart;
+            this.session = session;
             button = new JButton("Remove");
-            button.setFont(new Font("Segoe UI", Font.BOLD, 14));
+            button.setFont(REMOVE_FONT);
             button.setForeground(Color.RED.darker());
             button.setOpaque(true);
 
@@ -469,25 +457,14 @@ public class KioskSystem extends JFrame {
 
         public Component getTableCellEditorComponent(JTable table, Object value,
                                                      boolean isSelected, int row, int column) {
-            selectedRow = row;
+            selectedRow = table.convertRowIndexToModel(row);
             clicked = true;
             return button;
         }
 
         public Object getCellEditorValue() {
             if (clicked) {
-                if (selectedRow >= 0 && selectedRow < entries.size()) {
-                    CartEntry entry = entries.get(selectedRow);
-                    if (entry.quantity > 1) {
-                        entry.quantity--;
-                    } else {
-                        cart.remove(entry.product);
-                        entries.remove(selectedRow);
-                    }
-                    model.removeRow(selectedRow);
-                    kiosk.updateCartStatus();
-                    kiosk.refreshProducts();
-                }
+                session.removeOne(selectedRow);
             }
             clicked = false;
             return "Remove";
@@ -507,6 +484,7 @@ public class KioskSystem extends JFrame {
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception ignored) {}
+        KioskMetrics.start();
         SwingUtilities.invokeLater(() -> {
             KioskSystem kioskSystem = new KioskSystem();
             kioskSystem.setVisible(true);
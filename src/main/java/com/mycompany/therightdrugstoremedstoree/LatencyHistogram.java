@@ -0,0 +1,139 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with a fixed footprint. Values are nanoseconds in log-linear buckets:
+ * exact below 32 ns, then 16 sub-buckets per power of two (about 6% error) up to ~18 minutes.
+ * Recording is one atomic increment plus an add; readers work on {@link Snapshot}s.
+ */
+final class LatencyHistogram implements LatencyMXBean {
+    private static final int LINEAR = 32;
+    private static final int SUB_BUCKETS = 16;
+    private static final int MAX_MAGNITUDE = 40;
+    static final int BUCKETS = LINEAR + (MAX_MAGNITUDE - 4) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    void record(long nanos) {
+        counts.incrementAndGet(bucket(nanos));
+        sum.addAndGet(nanos);
+    }
+
+    /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} reading. */
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < LINEAR) return nanos < 0 ? 0 : (int) nanos;
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+        if (magnitude > MAX_MAGNITUDE) return BUCKETS - 1;
+        int shift = magnitude - 4;
+        return LINEAR + (magnitude - 5) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /** Largest value that lands in {@code bucket}. */
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR) return bucket;
+        int magnitude = (bucket - LINEAR) / SUB_BUCKETS + 5;
+        int sub = (bucket - LINEAR) % SUB_BUCKETS;
+        int shift = magnitude - 4;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.get());
+    }
+
+    /** Point-in-time copy of the buckets. */
+    static final class Snapshot {
+        final long[] counts;
+        final long count;
+        final long sum;
+
+        Snapshot(long[] counts, long count, long sum) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        /** What was recorded after {@code earlier}; used for interval reporting. */
+        Snapshot minus(Snapshot earlier) {
+            long[] diff = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                diff[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(diff, count - earlier.count, sum - earlier.sum);
+        }
+
+        long percentile(double p) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) return upperBound(i);
+            }
+            return upperBound(BUCKETS - 1);
+        }
+
+        long max() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (counts[i] != 0) return upperBound(i);
+            }
+            return 0;
+        }
+
+        long mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return snapshot().count;
+    }
+
+    @Override
+    public long getMeanMicros() {
+        return snapshot().mean() / 1000;
+    }
+
+    @Override
+    public long getP50Micros() {
+        return snapshot().percentile(50) / 1000;
+    }
+
+    @Override
+    public long getP99Micros() {
+        return snapshot().percentile(99) / 1000;
+    }
+
+    @Override
+    public long getP999Micros() {
+        return snapshot().percentile(99.9) / 1000;
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return snapshot().max() / 1000;
+    }
+}
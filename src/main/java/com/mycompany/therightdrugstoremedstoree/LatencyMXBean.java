@@ -0,0 +1,16 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+/** JMX view of one {@link LatencyHistogram}; values cover everything recorded since startup. */
+public interface LatencyMXBean {
+    long getCount();
+
+    long getMeanMicros();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+}
@@ -0,0 +1,26 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+/** Formats centavo amounts as pesos without going through String.format. */
+final class Money {
+    static final char PESO = '₱';
+
+    private Money() {
+    }
+
+    /** Appends {@code cents} as e.g. {@code 1234.50}. */
+    static StringBuilder append(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % 100;
+        sb.append(cents / 100).append('.');
+        if (fraction < 10) sb.append('0');
+        return sb.append(fraction);
+    }
+
+    /** {@code cents} as e.g. {@code ₱1234.50}. */
+    static String format(long cents) {
+        return append(new StringBuilder(12).append(PESO), cents).toString();
+    }
+}
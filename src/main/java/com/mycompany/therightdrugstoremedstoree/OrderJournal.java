@@ -0,0 +1,539 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of cart changes and placed orders.
+ *
+ * Appends only enqueue a framed record and return a future; a single writer thread drains whatever has
+ * queued up, writes it with one gathering write and one fsync, then completes the whole batch (group
+ * commit). A batch that fails to write is cut off again, so later batches never follow a torn frame.
+ *
+ * Segments roll over at -Dkiosk.journal.segmentBytes. The writer keeps the state replay would recover,
+ * and on every rollover, and again after {@link #open}, it writes that state to a checkpoint file and
+ * deletes the segments the checkpoint covers, so startup reads the checkpoint plus the segments since.
+ * {@link #open} replays those, truncating a torn tail, and reports the completed orders and the cart that
+ * was in flight.
+ *
+ * Lines reference products by catalog index, so each segment records the catalog stamp it was written
+ * against and an in-flight cart is only restored when that stamp still matches.
+ *
+ * A journal directory belongs to one process at a time: {@link #open} locks journal.lock in it and fails
+ * while another process, such as a {@link KioskServer} or a second kiosk, holds it, since opening
+ * checkpoints and deletes segments that the other process may still be writing.
+ */
+final class OrderJournal implements Closeable {
+    static final byte CART_LINE = 1;
+    static final byte CART_CLEAR = 2;
+    static final byte CART_FLAGS = 3;
+    static final byte ORDER = 4;
+
+    private static final int MAGIC = 0x4B4A4E4C; // "KJNL"
+    private static final int CHECKPOINT_MAGIC = 0x4B4A4350; // "KJCP"
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 16;
+    private static final int FRAME_HEADER_SIZE = 8; // payload length, CRC32 of payload
+    private static final long DEFAULT_SEGMENT_BYTES = 16L * 1024 * 1024;
+    private static final int MAX_BATCH = 1024;
+
+    /** What replay found on disk. */
+    static final class Recovery {
+        /** In-flight cart lines, in insertion order; empty if the catalog changed since. */
+        final CartLines cart = new CartLines();
+        /** Units ordered per sku since the current catalog, whose stock column they come off. */
+        final CartLines sold = new CartLines();
+        int cartFlags;
+        int orders;
+        long lastOrderNumber;
+        long truncatedBytes;
+
+        Recovery copy() {
+            Recovery copy = new Recovery();
+            copy.cart.restore(cart.snapshot());
+            copy.sold.restore(sold.snapshot());
+            copy.cartFlags = cartFlags;
+            copy.orders = orders;
+            copy.lastOrderNumber = lastOrderNumber;
+            return copy;
+        }
+    }
+
+    private static final class Pending {
+        final ByteBuffer frame;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(ByteBuffer frame) {
+            this.frame = frame;
+        }
+    }
+
+    private final Path dir;
+    private final FileLock lock;
+    private final long catalogStamp;
+    private final long segmentBytes;
+    private final Recovery recovery;
+    /** What replay would recover from everything written so far; only the writer touches it after open. */
+    private final Recovery state;
+    private final AtomicLong orderNumbers;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final CRC32 crc = new CRC32();
+    private volatile boolean closed;
+    private FileChannel segment;
+    private int segmentNumber;
+
+    private OrderJournal(Path dir, FileLock lock, long catalogStamp, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.lock = lock;
+        this.catalogStamp = catalogStamp;
+        this.segmentBytes = segmentBytes;
+        this.recovery = new Recovery();
+        replay();
+        this.state = recovery.copy();
+        // Replay's segments are now covered by a checkpoint, so the next open starts from there.
+        startSegment(segmentNumber + 1);
+        checkpoint();
+        this.orderNumbers = new AtomicLong(recovery.lastOrderNumber);
+        this.writer = new Thread(this::writeLoop, "order-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    static OrderJournal open(Path dir, long catalogStamp) throws IOException {
+        return open(dir, catalogStamp, Long.getLong("kiosk.journal.segmentBytes", DEFAULT_SEGMENT_BYTES));
+    }
+
+    static OrderJournal open(Path dir, long catalogStamp, long segmentBytes) throws IOException {
+        Files.createDirectories(dir);
+        FileChannel lockFile = FileChannel.open(dir.resolve("journal.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = null;
+        try {
+            try {
+                lock = lockFile.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // Held by this process already, which is just as much in use.
+            }
+            if (lock == null) {
+                throw new IOException("The order journal in " + dir + " is in use by another kiosk process");
+            }
+            return new OrderJournal(dir, lock, catalogStamp, segmentBytes);
+        } catch (IOException | RuntimeException e) {
+            lockFile.close();
+            throw e;
+        }
+    }
+
+    Recovery recovery() {
+        return recovery;
+    }
+
+    long nextOrderNumber() {
+        return orderNumbers.incrementAndGet();
+    }
+
+    /** Records the new quantity of one cart line; 0 removes it. */
+    CompletableFuture<Void> cartLine(int sku, int quantity) {
+        ByteBuffer payload = payload(CART_LINE, 8);
+        payload.putInt(sku).putInt(quantity);
+        return append(payload);
+    }
+
+    CompletableFuture<Void> cartClear() {
+        return append(payload(CART_CLEAR, 0));
+    }
+
+    CompletableFuture<Void> cartFlags(int flags) {
+        ByteBuffer payload = payload(CART_FLAGS, 1);
+        payload.put((byte) flags);
+        return append(payload);
+    }
+
+    /** Records a placed order. Replaying it takes the ordered quantities out of the in-flight cart. */
+    CompletableFuture<Void> order(long orderNumber, List<CartEntry> lines, PriceTable prices, int flags) {
+        ByteBuffer payload = payload(ORDER, 8 + 1 + 1 + 4 + lines.size() * 16 + 16);
+        payload.putLong(orderNumber).put((byte) flags);
+        int rxPosition = payload.position();
+        payload.put((byte) 0).putInt(lines.size());
+        boolean rx = false;
+        long listTotal = 0;
+        long total = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            CartEntry entry = lines.get(i);
+            long unit = prices.unitPrice(entry.product, flags);
+            payload.putInt(entry.product.sku).putInt(entry.quantity).putLong(unit);
+            rx |= entry.product.isRx;
+            listTotal += entry.product.priceCents * entry.quantity;
+            total += prices.lineTotal(entry.product, entry.quantity, flags);
+        }
+        payload.put(rxPosition, (byte) (rx ? 1 : 0));
+        payload.putLong(listTotal).putLong(total);
+        return append(payload);
+    }
+
+    private static ByteBuffer payload(byte type, int bodySize) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + 1 + 8 + bodySize);
+        frame.position(FRAME_HEADER_SIZE);
+        frame.put(type).putLong(System.currentTimeMillis());
+        return frame;
+    }
+
+    private CompletableFuture<Void> append(ByteBuffer frame) {
+        Pending pending = new Pending(frame);
+        if (closed) {
+            pending.done.completeExceptionally(new IOException("Order journal is closed"));
+            return pending.done;
+        }
+        queue.add(pending);
+        if (closed && queue.remove(pending)) {
+            // close() may already have failed what was queued; nobody would complete this one.
+            pending.done.completeExceptionally(new IOException("Order journal is closed"));
+        }
+        return pending.done;
+    }
+
+    /**
+     * Withdraws {@code record} if the writer has not taken it yet, failing it with a
+     * {@link CancellationException}; returns false when it is already being written or done.
+     */
+    boolean cancel(CompletableFuture<Void> record) {
+        for (Pending pending : queue) {
+            if (pending.done == record) {
+                if (!queue.remove(pending)) return false;
+                pending.done.cancel(false);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            try {
+                writeBatch(batch);
+                for (Pending pending : batch) {
+                    pending.done.complete(null);
+                }
+            } catch (IOException | RuntimeException e) {
+                for (Pending pending : batch) {
+                    pending.done.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) throws IOException {
+        ByteBuffer[] frames = new ByteBuffer[batch.size()];
+        long bytes = 0;
+        for (int i = 0; i < frames.length; i++) {
+            ByteBuffer frame = batch.get(i).frame;
+            int payloadLength = frame.position() - FRAME_HEADER_SIZE;
+            crc.reset();
+            crc.update(frame.array(), FRAME_HEADER_SIZE, payloadLength);
+            frame.putInt(0, payloadLength).putInt(4, (int) crc.getValue());
+            frame.flip();
+            frames[i] = frame;
+            bytes += frame.remaining();
+        }
+        if (segment.position() > SEGMENT_HEADER_SIZE && segment.position() + bytes > segmentBytes) {
+            segment.force(false);
+            segment.close();
+            startSegment(segmentNumber + 1);
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                // The segments are kept, so nothing is lost; the next rollover or open tries again.
+                System.err.println("Unable to checkpoint the order journal: " + e.getMessage());
+            }
+        }
+        long start = segment.position();
+        try {
+            long remaining = bytes;
+            while (remaining > 0) {
+                remaining -= segment.write(frames);
+            }
+            segment.force(false);
+        } catch (IOException e) {
+            discardFrom(start);
+            throw e;
+        }
+        for (ByteBuffer frame : frames) {
+            apply(state, frame.slice(FRAME_HEADER_SIZE, frame.limit() - FRAME_HEADER_SIZE));
+        }
+    }
+
+    /**
+     * Cuts a failed batch off the segment, since replay stops at its torn frame and would drop everything
+     * written after it. If even that fails the writer moves on to a new segment.
+     */
+    private void discardFrom(long position) {
+        try {
+            segment.truncate(position);
+            segment.position(position);
+            segment.force(false);
+        } catch (IOException e) {
+            try {
+                segment.close();
+                startSegment(segmentNumber + 1);
+            } catch (IOException again) {
+                System.err.println("Unable to start a new journal segment: " + again.getMessage());
+            }
+        }
+    }
+
+    private Path segmentPath(int number) {
+        return dir.resolve(String.format("journal-%08d.log", number));
+    }
+
+    private void startSegment(int number) throws IOException {
+        segmentNumber = number;
+        segment = FileChannel.open(segmentPath(number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(catalogStamp).flip();
+        while (header.hasRemaining()) {
+            segment.write(header);
+        }
+        segment.force(true);
+    }
+
+    private static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(8, name.length() - 4));
+    }
+
+    /**
+     * Writes {@link #state} as the checkpoint of everything before the current segment, then deletes
+     * those segments. The file is replaced atomically, so a crash leaves either checkpoint whole.
+     *
+     * Layout: magic, version, catalog stamp, first segment not covered, cart flags, order count, last
+     * order number, then the cart and the sold units as {@link CartLines#snapshot}s each prefixed by its
+     * length, and a CRC32 of all of it.
+     */
+    private void checkpoint() throws IOException {
+        byte[] cart = state.cart.snapshot();
+        byte[] sold = state.sold.snapshot();
+        ByteBuffer data = ByteBuffer.allocate(40 + cart.length + 4 + sold.length + 4);
+        data.putInt(CHECKPOINT_MAGIC).putInt(VERSION).putLong(catalogStamp).putInt(segmentNumber)
+                .putInt(state.cartFlags).putInt(state.orders).putLong(state.lastOrderNumber)
+                .putInt(cart.length).put(cart).putInt(sold.length).put(sold);
+        CRC32 check = new CRC32();
+        check.update(data.array(), 0, data.position());
+        data.putInt((int) check.getValue()).flip();
+
+        Path temp = dir.resolve("checkpoint.tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, dir.resolve("checkpoint.bin"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        for (Path path : segments()) {
+            if (segmentNumber(path) < segmentNumber) Files.delete(path);
+        }
+    }
+
+    /**
+     * Loads the checkpoint into {@link #recovery} and returns the first segment it does not cover, or 0
+     * without one. Its catalog stamp is stored in {@code stamp[0]}.
+     */
+    private int loadCheckpoint(long[] stamp) throws IOException {
+        Path path = dir.resolve("checkpoint.bin");
+        if (!Files.exists(path)) return 0;
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+        CRC32 check = new CRC32();
+        if (data.remaining() >= 44) check.update(data.array(), 0, data.limit() - 4);
+        if (data.remaining() < 44 || data.getInt() != CHECKPOINT_MAGIC || data.getInt() != VERSION
+                || data.getInt(data.limit() - 4) != (int) check.getValue()) {
+            throw new IOException("Corrupt journal checkpoint: " + path);
+        }
+        stamp[0] = data.getLong();
+        int first = data.getInt();
+        recovery.cartFlags = data.getInt();
+        recovery.orders = data.getInt();
+        recovery.lastOrderNumber = data.getLong();
+        byte[] cart = new byte[data.getInt()];
+        data.get(cart);
+        byte[] sold = new byte[data.getInt()];
+        data.get(sold);
+        recovery.cart.restore(cart);
+        recovery.sold.restore(sold);
+        return first;
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "journal-*.log")) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /** Replays the checkpoint and the segments after it, leaving {@link #segmentNumber} at the last one. */
+    private void replay() throws IOException {
+        long[] checkpointStamp = {catalogStamp};
+        int first = loadCheckpoint(checkpointStamp);
+        List<Path> segments = segments();
+        for (Iterator<Path> it = segments.iterator(); it.hasNext(); ) {
+            Path path = it.next();
+            if (segmentNumber(path) < first) {
+                // Left over from a crash between writing a checkpoint and deleting what it covers.
+                Files.delete(path);
+                it.remove();
+            }
+        }
+
+        long lastStamp = checkpointStamp[0];
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            boolean last = i == segments.size() - 1;
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (data.remaining() < SEGMENT_HEADER_SIZE || data.getInt() != MAGIC || data.getInt() != VERSION) {
+                throw new IOException("Corrupt journal segment header: " + path);
+            }
+            long stamp = data.getLong();
+            if (stamp != lastStamp) {
+                // Catalog indexes may have moved; an older in-flight cart cannot be mapped reliably, and
+                // a new catalog comes with its own stock counts.
+                recovery.cart.clear();
+                recovery.sold.clear();
+            }
+            lastStamp = stamp;
+
+            int validEnd = replaySegment(data, recovery);
+            if (validEnd < data.limit()) {
+                recovery.truncatedBytes += data.limit() - validEnd;
+                if (last) {
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                        channel.truncate(validEnd);
+                        channel.force(true);
+                    }
+                }
+            }
+        }
+        if (lastStamp != catalogStamp) {
+            recovery.cart.clear();
+            recovery.sold.clear();
+        }
+        segmentNumber = segments.isEmpty() ? Math.max(first - 1, 0) : segmentNumber(segments.get(segments.size() - 1));
+    }
+
+    /** Applies every intact record of one segment and returns the offset just past the last one. */
+    private static int replaySegment(ByteBuffer data, Recovery into) {
+        CRC32 check = new CRC32();
+        while (data.remaining() >= FRAME_HEADER_SIZE) {
+            int start = data.position();
+            int length = data.getInt();
+            int expectedCrc = data.getInt();
+            if (length < 9 || length > data.remaining()) return start;
+            check.reset();
+            check.update(data.array(), data.position(), length);
+            if ((int) check.getValue() != expectedCrc) return start;
+
+            ByteBuffer record = data.slice().limit(length);
+            data.position(data.position() + length);
+            if (!apply(into, record)) return start;
+        }
+        return data.position();
+    }
+
+    /** Applies one record payload; returns false for a record type this version does not know. */
+    private static boolean apply(Recovery into, ByteBuffer record) {
+        byte type = record.get();
+        record.getLong(); // timestamp
+        switch (type) {
+            case CART_LINE: {
+                int sku = record.getInt();
+                int quantity = record.getInt();
+                into.cart.set(sku, quantity);
+                return true;
+            }
+            case CART_CLEAR:
+                into.cart.clear();
+                return true;
+            case CART_FLAGS:
+                into.cartFlags = record.get();
+                return true;
+            case ORDER: {
+                into.orders++;
+                into.lastOrderNumber = Math.max(into.lastOrderNumber, record.getLong());
+                record.get(); // discount flags
+                record.get(); // Rx marker
+                int lines = record.getInt();
+                for (int i = 0; i < lines; i++) {
+                    int sku = record.getInt();
+                    int quantity = record.getInt();
+                    record.getLong(); // unit price
+                    into.sold.add(sku, quantity);
+                    int row = into.cart.row(sku);
+                    if (row >= 0) into.cart.set(sku, into.cart.quantity(row) - quantity);
+                }
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Stops accepting appends and waits for the writer to write everything queued before closing the
+     * segment; a record that arrives too late to be written is failed rather than dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        boolean interrupted = false;
+        // Not interrupted: an interrupt during a write would close the channel under the batch.
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.done.completeExceptionally(new IOException("Order journal is closed"));
+        }
+        try {
+            segment.close();
+        } finally {
+            lock.channel().close();
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+}
@@ -0,0 +1,267 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * {@link Promotions} compiled into a decision table, plus every catalog price already worked out from it.
+ *
+ * A cell of the table holds what applies to one group of products, Rx and non-Rx separately: the stacked
+ * percent off (as the parts per million of the price that is kept) and the buy/get quantities. A group is a
+ * category, or a category together with a product that has rules of its own. Each sku maps to its cell and
+ * has both of its unit prices (without and with Senior/PWD) precomputed, so pricing a cart line is a couple
+ * of array reads whatever the rules are. Compiling runs on the fork/join pool.
+ *
+ * A table never changes once compiled; {@link PricingEngine} swaps in a new one when the promotions change.
+ * Unit prices are rounded half up after the promotions and again after the Senior/PWD discount: with
+ * VAT exemption the VAT is taken out of the promoted price first and the discount applies to the rest.
+ */
+final class PriceTable {
+    private static final int CATEGORIES = CatalogStore.CATEGORIES.length;
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final long ALL = 1_000_000;
+
+    static final PriceTable DEFAULT = compile(Promotions.DEFAULTS, null);
+
+    private final int seniorPercent;
+    private final int vatPercent;
+    private final long[] keepPpm;
+    private final int[] buy;
+    private final int[] get;
+    private final int[] cellOfSku;
+    /** {@code [2 * sku]} without and {@code [2 * sku + 1]} with the Senior/PWD discount. */
+    private final long[] unitPrices;
+
+    private PriceTable(int seniorPercent, int vatPercent, int cells, int skus) {
+        this.seniorPercent = seniorPercent;
+        this.vatPercent = vatPercent;
+        this.keepPpm = new long[cells];
+        this.buy = new int[cells];
+        this.get = new int[cells];
+        this.cellOfSku = new int[skus];
+        this.unitPrices = new long[skus * 2];
+    }
+
+    /** Compiles {@code rules}; prices of {@code catalog}'s skus are precomputed when it is not null. */
+    static PriceTable compile(List<Promotions.Rule> rules, CatalogStore catalog) {
+        int senior = 0;
+        int vat = 0;
+        Map<String, Integer> productIds = new HashMap<>();
+        for (Promotions.Rule rule : rules) {
+            if (rule.type == Promotions.SENIOR_PWD) senior = rule.value;
+            if (rule.type == Promotions.VAT_EXEMPT) vat = rule.value;
+            if (rule.product != null) productIds.putIfAbsent(rule.product, productIds.size());
+        }
+        String[] products = new String[productIds.size()];
+        productIds.forEach((name, id) -> products[id] = name);
+
+        int groups = CATEGORIES * (1 + products.length);
+        int skus = catalog != null ? catalog.size() : 0;
+        PriceTable table = new PriceTable(senior, vat, groups * 2, skus);
+        for (int group = 0; group < groups; group++) {
+            int category = group % CATEGORIES;
+            String product = group < CATEGORIES ? null : products[group / CATEGORIES - 1];
+            table.compileCell(rules, group * 2, category, product, false);
+            table.compileCell(rules, group * 2 + 1, category, product, true);
+        }
+
+        if (skus > 0) {
+            int[] productOf = null;
+            if (products.length > 0) {
+                productOf = new int[skus];
+                ForkJoinPool.commonPool().invoke(new MatchProducts(catalog, productIds, productOf, 0, skus));
+            }
+            ForkJoinPool.commonPool().invoke(table.new Fill(catalog, productOf, 0, skus));
+        }
+        return table;
+    }
+
+    private void compileCell(List<Promotions.Rule> rules, int cell, int category, String product, boolean rx) {
+        long keep = ALL;
+        int categoryBuy = 0;
+        int categoryGet = 0;
+        int productBuy = 0;
+        int productGet = 0;
+        for (Promotions.Rule rule : rules) {
+            boolean byProduct = product != null && product.equals(rule.product);
+            if ((rule.category != category || rule.category < 0) && !byProduct) continue;
+            if (rx && !rule.includeRx) continue;
+            if (rule.type == Promotions.PERCENT_OFF) {
+                keep = (keep * (100 - rule.value) + 50) / 100;
+            } else if (rule.type == Promotions.BUY_GET && byProduct) {
+                productBuy = rule.buy;
+                productGet = rule.get;
+            } else if (rule.type == Promotions.BUY_GET) {
+                categoryBuy = rule.buy;
+                categoryGet = rule.get;
+            }
+        }
+        keepPpm[cell] = keep;
+        buy[cell] = productBuy > 0 ? productBuy : categoryBuy;
+        get[cell] = productBuy > 0 ? productGet : categoryGet;
+    }
+
+    private long unitPrice(long listCents, int cell, boolean discounted) {
+        long unit = (listCents * keepPpm[cell] + ALL / 2) / ALL;
+        if (!discounted) return unit;
+        if (vatPercent > 0) unit = (unit * 200 + 100 + vatPercent) / (200 + 2 * vatPercent);
+        return unit - (unit * seniorPercent + 50) / 100;
+    }
+
+    private int cell(Product product) {
+        if (product.sku >= 0 && product.sku < cellOfSku.length) return cellOfSku[product.sku];
+        return product.category * 2 + (product.isRx ? 1 : 0);
+    }
+
+    int seniorPercent() {
+        return seniorPercent;
+    }
+
+    /** The VAT percent taken out of Senior/PWD prices, or 0 when they are not VAT exempt. */
+    int vatExemptPercent() {
+        return vatPercent;
+    }
+
+    long unitPrice(Product product, int flags) {
+        boolean discounted = PricingEngine.hasDiscount(flags);
+        if (product.sku >= 0 && product.sku < cellOfSku.length) {
+            return unitPrices[product.sku * 2 + (discounted ? 1 : 0)];
+        }
+        return unitPrice(product.priceCents, cell(product), discounted);
+    }
+
+    /** Units that are paid for out of {@code quantity}, after buy/get promotions. */
+    int chargedQuantity(Product product, int quantity) {
+        int cell = cell(product);
+        if (buy[cell] == 0) return quantity;
+        return quantity - quantity / (buy[cell] + get[cell]) * get[cell];
+    }
+
+    long lineTotal(Product product, int quantity, int flags) {
+        return unitPrice(product, flags) * chargedQuantity(product, quantity);
+    }
+
+    /** "Buy 2 get 1" style label for the product's buy/get promotion, or null. */
+    String buyGetLabel(Product product) {
+        int cell = cell(product);
+        return buy[cell] == 0 ? null : "Buy " + buy[cell] + " get " + get[cell];
+    }
+
+    void begin(Quote quote, int flags) {
+        quote.flags = flags;
+        quote.lines = 0;
+        quote.items = 0;
+        quote.listTotal = 0;
+        quote.total = 0;
+    }
+
+    /** Adds one cart line to {@code quote} and returns the line total. */
+    long addLine(Quote quote, Product product, int quantity) {
+        long line = lineTotal(product, quantity, quote.flags);
+        quote.lines++;
+        quote.items += quantity;
+        quote.listTotal += product.priceCents * quantity;
+        quote.total += line;
+        return line;
+    }
+
+    /**
+     * Reprices many carts of this table's catalog stored as flat arrays. Lines of cart {@code c} are
+     * {@code [cartOffsets[c], cartOffsets[c + 1])}; its total is written to {@code totalsOut[c]}.
+     */
+    void repriceBatch(int[] skus, int[] quantities, int[] cartOffsets, int[] cartFlags,
+                      int cartCount, long[] totalsOut) {
+        for (int c = 0; c < cartCount; c++) {
+            int discounted = PricingEngine.hasDiscount(cartFlags[c]) ? 1 : 0;
+            long total = 0;
+            for (int i = cartOffsets[c]; i < cartOffsets[c + 1]; i++) {
+                int sku = skus[i];
+                int cell = cellOfSku[sku];
+                int quantity = quantities[i];
+                int charged = buy[cell] == 0 ? quantity : quantity - quantity / (buy[cell] + get[cell]) * get[cell];
+                total += unitPrices[sku * 2 + discounted] * charged;
+            }
+            totalsOut[c] = total;
+        }
+    }
+
+    /** Running totals of one priced cart. Reusable across carts via {@link #begin}. */
+    static final class Quote {
+        int flags;
+        int lines;
+        int items;
+        long listTotal;
+        long total;
+
+        long discount() {
+            return listTotal - total;
+        }
+    }
+
+    /** Finds the skus whose names have product rules; decoding the names is most of the compile. */
+    private static final class MatchProducts extends RecursiveAction {
+        private final CatalogStore catalog;
+        private final Map<String, Integer> productIds;
+        private final int[] productOf;
+        private final int from;
+        private final int to;
+
+        MatchProducts(CatalogStore catalog, Map<String, Integer> productIds, int[] productOf, int from, int to) {
+            this.catalog = catalog;
+            this.productIds = productIds;
+            this.productOf = productOf;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new MatchProducts(catalog, productIds, productOf, from, mid),
+                        new MatchProducts(catalog, productIds, productOf, mid, to));
+                return;
+            }
+            for (int sku = from; sku < to; sku++) {
+                Integer id = productIds.get(catalog.name(sku));
+                productOf[sku] = id != null ? id : -1;
+            }
+        }
+    }
+
+    /** Maps skus to cells and precomputes their unit prices. */
+    private final class Fill extends RecursiveAction {
+        private final CatalogStore catalog;
+        private final int[] productOf;
+        private final int from;
+        private final int to;
+
+        Fill(CatalogStore catalog, int[] productOf, int from, int to) {
+            this.catalog = catalog;
+            this.productOf = productOf;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Fill(catalog, productOf, from, mid), new Fill(catalog, productOf, mid, to));
+                return;
+            }
+            for (int sku = from; sku < to; sku++) {
+                int group = catalog.categoryOf(sku);
+                if (productOf != null && productOf[sku] >= 0) group += CATEGORIES * (1 + productOf[sku]);
+                int cell = group * 2 + (catalog.isRx(sku) ? 1 : 0);
+                long listCents = catalog.priceCents(sku);
+                cellOfSku[sku] = cell;
+                unitPrices[sku * 2] = unitPrice(listCents, cell, false);
+                unitPrices[sku * 2 + 1] = unitPrice(listCents, cell, true);
+            }
+        }
+    }
+}
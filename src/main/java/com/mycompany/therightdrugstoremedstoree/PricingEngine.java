@@ -0,0 +1,55 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cart pricing in integer centavos. Holds the current {@link PriceTable} and has no Swing dependency.
+ *
+ * Every line is priced as (promoted unit price x charged quantity) and the cart total is the sum of the
+ * lines, so the cart dialog, the receipt and back-office jobs always agree to the centavo. Whoever prices
+ * several things that must agree (a cart, the grid, one checkout) takes {@link #table()} once and uses it
+ * throughout; {@link #install} swaps in a new table atomically and then tells the listeners, which take the
+ * new table on their next pass.
+ */
+final class PricingEngine {
+    static final int SENIOR = 1;
+    static final int PWD = 2;
+
+    private final AtomicReference<PriceTable> table;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    PricingEngine() {
+        this(PriceTable.DEFAULT);
+    }
+
+    PricingEngine(PriceTable table) {
+        this.table = new AtomicReference<>(table);
+    }
+
+    static int discountFlags(boolean senior, boolean pwd) {
+        return (senior ? SENIOR : 0) | (pwd ? PWD : 0);
+    }
+
+    /** Senior and PWD do not stack: either one gives the same discount. */
+    static boolean hasDiscount(int flags) {
+        return (flags & (SENIOR | PWD)) != 0;
+    }
+
+    PriceTable table() {
+        return table.get();
+    }
+
+    /** Makes {@code next} the current table, then runs the listeners on the calling thread. */
+    void install(PriceTable next) {
+        table.set(next);
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+}
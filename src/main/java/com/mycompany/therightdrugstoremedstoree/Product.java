@@ -0,0 +1,36 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import javax.swing.*;
+
+/** One catalog row; {@link #sku} is the dense catalog id and is what identifies a product. */
+class Product {
+    int sku;
+    String name;
+    long priceCents;
+    Icon image;
+    boolean isRx;
+    /** Index into {@link CatalogStore#CATEGORIES}. */
+    int category;
+
+    Product(int sku, String name, long priceCents, Icon image, boolean isRx, int category) {
+        this.sku = sku;
+        this.name = name;
+        this.priceCents = priceCents;
+        this.image = image;
+        this.isRx = isRx;
+        this.category = category;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Product)) return false;
+        Product product = (Product) o;
+        return sku == product.sku;
+    }
+
+    @Override
+    public int hashCode() {
+        return sku;
+    }
+}
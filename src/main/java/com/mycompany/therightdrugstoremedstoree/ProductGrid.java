@@ -0,0 +1,348 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import javax.swing.*;
+import javax.swing.border.Border;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Product grid that only materializes tiles for the rows inside the viewport.
+ * Tiles come from a pool sized to the viewport and are rebound as the user scrolls,
+ * so the cost of a category switch or a scroll does not depend on the catalog size.
+ * All tiles are priced from one {@link PriceTable}, replaced only by {@link #reprice}, so the grid never
+ * shows old and new promotions side by side.
+ */
+class ProductGrid extends JPanel implements Scrollable {
+    static final int COLUMNS = 4;
+    static final int TILE_WIDTH = 220;
+    static final int TILE_HEIGHT = 260;
+    static final int GAP = 20;
+    static final int ICON_SIZE = 120;
+
+    private static final Font NAME_FONT = new Font("Segoe UI", Font.BOLD, 18);
+    private static final Font PRICE_FONT = new Font("Segoe UI", Font.PLAIN, 16);
+    private static final Border TILE_BORDER = BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(new Color(0xBBBBBB), 1, true),
+            new EmptyBorder(10, 10, 10, 10)
+    );
+    private static final Border NAME_BORDER = new EmptyBorder(10, 5, 10, 5);
+    private static final Border PRICE_BORDER = new EmptyBorder(5, 5, 5, 5);
+    private static final Dimension IMAGE_SIZE = new Dimension(TILE_WIDTH, 140);
+    private static final Color PROMO_COLOR = new Color(0xCC0000);
+
+    private final Consumer<Product> onSelect;
+    private final PricingEngine pricing;
+    private final List<Tile> pool = new ArrayList<>();
+    private final ChangeListener viewportListener = e -> layoutTiles();
+    private boolean[] used = new boolean[0];
+    private List<Product> products = Collections.emptyList();
+    private PriceTable prices;
+    private int discountFlags;
+    private Runnable onFirstPaint;
+
+    ProductGrid(Consumer<Product> onSelect, PricingEngine pricing) {
+        super(null);
+        this.onSelect = onSelect;
+        this.pricing = pricing;
+        this.prices = pricing.table();
+        setBackground(Color.WHITE);
+    }
+
+    void setProducts(List<Product> products) {
+        this.products = products;
+        for (Tile tile : pool) {
+            tile.unbind();
+        }
+        revalidate();
+        scrollRectToVisible(new Rectangle(0, 0, 1, 1));
+        repaint();
+    }
+
+    /** Runs {@code action} once, right after the grid has painted products for the first time. */
+    void whenFirstPainted(Runnable action) {
+        onFirstPaint = action;
+    }
+
+    @Override
+    protected void paintChildren(Graphics g) {
+        super.paintChildren(g);
+        if (onFirstPaint != null && !products.isEmpty()) {
+            Runnable action = onFirstPaint;
+            onFirstPaint = null;
+            action.run();
+        }
+    }
+
+    void setDiscountFlags(int discountFlags) {
+        if (this.discountFlags == discountFlags) return;
+        this.discountFlags = discountFlags;
+        updatePrices();
+    }
+
+    /** Re-prices the tiles in view with the pricing engine's current table. */
+    void reprice() {
+        PriceTable current = pricing.table();
+        if (current == prices) return;
+        prices = current;
+        updatePrices();
+    }
+
+    private void updatePrices() {
+        for (Tile tile : pool) {
+            if (tile.product != null) tile.updatePrice();
+        }
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport) {
+            ((JViewport) getParent()).addChangeListener(viewportListener);
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        if (getParent() instanceof JViewport) {
+            ((JViewport) getParent()).removeChangeListener(viewportListener);
+        }
+        super.removeNotify();
+    }
+
+    @Override
+    public void doLayout() {
+        layoutTiles();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int rows = (products.size() + COLUMNS - 1) / COLUMNS;
+        int width = COLUMNS * TILE_WIDTH + (COLUMNS - 1) * GAP;
+        int height = rows == 0 ? 0 : rows * (TILE_HEIGHT + GAP) - GAP;
+        return new Dimension(width, height);
+    }
+
+    private void layoutTiles() {
+        Rectangle visible = getVisibleRect();
+        int rowHeight = TILE_HEIGHT + GAP;
+        int tileWidth = Math.max(1, (getWidth() - (COLUMNS - 1) * GAP) / COLUMNS);
+
+        int firstRow = Math.max(0, visible.y / rowHeight);
+        int lastRow = (visible.y + visible.height) / rowHeight;
+        int first = firstRow * COLUMNS;
+        int end = Math.min(products.size(), (lastRow + 1) * COLUMNS);
+
+        // Capacity covers one extra row so a partially scrolled viewport never needs to grow the pool.
+        int capacity = ((visible.height / rowHeight) + 2) * COLUMNS;
+        while (pool.size() < capacity) {
+            Tile tile = new Tile();
+            pool.add(tile);
+            add(tile);
+        }
+
+        // Index i always lands in slot i % size, so scrolling one row only rebinds the tiles entering the view.
+        int size = pool.size();
+        if (used.length < size) {
+            used = new boolean[size];
+        } else {
+            Arrays.fill(used, 0, size, false);
+        }
+        for (int i = first; i < end; i++) {
+            int slot = i % size;
+            Tile tile = pool.get(slot);
+            used[slot] = true;
+            tile.bind(i, products.get(i));
+            int row = i / COLUMNS;
+            int col = i % COLUMNS;
+            tile.setBounds(col * (tileWidth + GAP), row * rowHeight, tileWidth, TILE_HEIGHT);
+            tile.setVisible(true);
+        }
+        for (int slot = 0; slot < size; slot++) {
+            if (!used[slot]) {
+                Tile tile = pool.get(slot);
+                tile.setVisible(false);
+                tile.unbind();
+            }
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return GAP;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+
+    private final class Tile extends JPanel {
+        private final JLabel imgLabel = new JLabel();
+        private final JLabel nameLabel = new JLabel("", SwingConstants.CENTER);
+        private final PriceLabel priceLabel = new PriceLabel();
+        private Product product;
+        private int index = -1;
+        private int priceFlags;
+        private PriceTable priceTable;
+
+        Tile() {
+            super(new BorderLayout());
+            setBackground(Color.WHITE);
+            setBorder(TILE_BORDER);
+
+            imgLabel.setHorizontalAlignment(SwingConstants.CENTER);
+            imgLabel.setPreferredSize(IMAGE_SIZE);
+            add(imgLabel, BorderLayout.NORTH);
+
+            nameLabel.setFont(NAME_FONT);
+            nameLabel.setBorder(NAME_BORDER);
+            add(nameLabel, BorderLayout.CENTER);
+
+            add(priceLabel, BorderLayout.SOUTH);
+
+            setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+            addMouseListener(new MouseAdapter() {
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    if (product != null) onSelect.accept(product);
+                }
+            });
+        }
+
+        void bind(int index, Product product) {
+            if (this.index == index && this.product == product) {
+                if (priceFlags != discountFlags || priceTable != prices) updatePrice();
+                return;
+            }
+            this.index = index;
+            this.product = product;
+            imgLabel.setIcon(product.image);
+            nameLabel.setText("<html><div style='text-align: center;'>" + escapeHtml(product.name) + "</div></html>");
+            updatePrice();
+        }
+
+        void unbind() {
+            index = -1;
+            product = null;
+            imgLabel.setIcon(null);
+        }
+
+        void updatePrice() {
+            priceFlags = discountFlags;
+            priceTable = prices;
+            long listCents = product.priceCents;
+            long unitCents = priceTable.unitPrice(product, priceFlags);
+            String buyGet = priceTable.buyGetLabel(product);
+
+            StringBuilder sb = new StringBuilder(48);
+            String first = Money.append(sb.append("Price: ").append(Money.PESO), listCents).toString();
+            String second = null;
+            if (unitCents != listCents) {
+                sb.setLength(0);
+                Money.append(sb.append(Money.PESO), unitCents);
+                if (buyGet != null) sb.append(" \u00B7 ").append(buyGet);
+                else sb.append(PricingEngine.hasDiscount(priceFlags) ? " (Discounted)" : " (Promo)");
+                second = sb.toString();
+            } else if (buyGet != null) {
+                second = buyGet;
+            }
+            priceLabel.setPrice(first, unitCents != listCents, second);
+        }
+    }
+
+    /** Names come from an external catalog, so markup in them is shown as text rather than interpreted. */
+    private static String escapeHtml(String text) {
+        StringBuilder sb = null;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            String entity = ch == '<' ? "&lt;" : ch == '>' ? "&gt;" : ch == '&' ? "&amp;"
+                    : ch == '"' ? "&quot;" : ch == '\'' ? "&#39;" : null;
+            if (entity == null) {
+                if (sb != null) sb.append(ch);
+                continue;
+            }
+            if (sb == null) sb = new StringBuilder(text.length() + 16).append(text, 0, i);
+            sb.append(entity);
+        }
+        return sb == null ? text : sb.toString();
+    }
+
+    /**
+     * The tile's price: the list price, struck through when a promotion or discount applies, and the
+     * promoted price and buy/get offer in red below it. Painted directly instead of through an HTML label,
+     * which re-parses its markup on every change and made discount toggles slow.
+     */
+    private static final class PriceLabel extends JComponent {
+        private String first = "";
+        private boolean struck;
+        private String second;
+
+        PriceLabel() {
+            setFont(PRICE_FONT);
+            setBorder(PRICE_BORDER);
+            setForeground(UIManager.getColor("Label.foreground"));
+        }
+
+        void setPrice(String first, boolean struck, String second) {
+            this.first = first;
+            this.struck = struck;
+            this.second = second;
+            repaint();
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            Insets insets = getInsets();
+            return new Dimension(TILE_WIDTH, insets.top + insets.bottom + 2 * getFontMetrics(getFont()).getHeight());
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Graphics2D g2 = (Graphics2D) g;
+            Object hints = Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+            if (hints instanceof java.util.Map) g2.addRenderingHints((java.util.Map<?, ?>) hints);
+            g2.setFont(getFont());
+            FontMetrics metrics = g2.getFontMetrics();
+            Insets insets = getInsets();
+            int width = getWidth() - insets.left - insets.right;
+            int y = insets.top + metrics.getAscent();
+
+            int firstWidth = metrics.stringWidth(first);
+            int x = insets.left + (width - firstWidth) / 2;
+            g2.setColor(getForeground());
+            g2.drawString(first, x, y);
+            if (struck) {
+                int strikeY = y - metrics.getAscent() / 3;
+                g2.drawLine(x, strikeY, x + firstWidth, strikeY);
+            }
+            if (second != null) {
+                y += metrics.getHeight();
+                g2.setColor(PROMO_COLOR);
+                g2.drawString(second, insets.left + (width - metrics.stringWidth(second)) / 2, y);
+            }
+        }
+    }
+}
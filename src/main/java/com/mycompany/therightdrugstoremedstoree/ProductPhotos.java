@@ -0,0 +1,282 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Product photos from the directory named by -Dkiosk.photos.dir, one file per product named by its GTIN
+ * ({@code 4800001000012.jpg}, {@code .jpeg} or {@code .png}).
+ *
+ * {@link #icon} wraps a product's generated icon, which is painted until the photo is ready. Photos are
+ * decoded on -Dkiosk.photos.threads workers (2 by default), subsampled while decoding to about twice the
+ * tile size and then scaled down to it, so a multi-megabyte JPEG never exists at full size. Thumbnails are
+ * written to thumbnails/ in the data directory under the GTIN and the SHA-256 of the photo's bytes, so a
+ * later run only hashes the file, and an edited photo is picked up because its hash changes; writing a
+ * product's new thumbnail deletes its old ones. In memory they are held through soft references in an LRU
+ * bounded by -Dkiosk.photos.cacheBytes (16 MB by default). A product without a usable photo is looked up
+ * again after -Dkiosk.photos.retrySeconds (60 by default), so photos added while the kiosk runs appear.
+ *
+ * Requests are served newest first and at most {@value #MAX_QUEUED} wait, so after a fast scroll the
+ * workers decode what is on screen rather than everything that scrolled past.
+ */
+final class ProductPhotos {
+    private static final String[] EXTENSIONS = {".jpg", ".jpeg", ".png"};
+    private static final long DEFAULT_BUDGET_BYTES = 16L * 1024 * 1024;
+    private static final int MAX_QUEUED = 64;
+    private static final long DEFAULT_RETRY_SECONDS = 60;
+
+    private final Path dir;
+    private final Path cacheDir;
+    private final int size;
+    private final long budgetBytes;
+    private final long retryNanos;
+    private long usedBytes;
+    private final LinkedHashMap<Long, SoftReference<BufferedImage>> thumbnails = new LinkedHashMap<>(64, 0.75f, true);
+    /** When each product was last found without a photo, by GTIN. */
+    private final Map<Long, Long> missing = new HashMap<>();
+    private final Map<Long, List<Component>> pending = new HashMap<>();
+    private final LinkedBlockingDeque<Long> queue = new LinkedBlockingDeque<>();
+
+    ProductPhotos(Path dir, Path cacheDir, int size, int workers, long budgetBytes) {
+        this.dir = dir;
+        this.cacheDir = cacheDir;
+        this.size = size;
+        this.budgetBytes = budgetBytes;
+        this.retryNanos = TimeUnit.SECONDS.toNanos(Long.getLong("kiosk.photos.retrySeconds", DEFAULT_RETRY_SECONDS));
+        ImageIO.setUseCache(false);
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(this::work, "photo-decoder-" + i);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            thread.start();
+        }
+    }
+
+    /** The photos configured with -Dkiosk.photos.dir, or null when there are none. */
+    static ProductPhotos fromProperties(int size) throws IOException {
+        String configured = System.getProperty("kiosk.photos.dir");
+        if (configured == null) return null;
+        return new ProductPhotos(Paths.get(configured), KioskFiles.dataDir().resolve("thumbnails"), size,
+                Integer.getInteger("kiosk.photos.threads", 2),
+                Long.getLong("kiosk.photos.cacheBytes", DEFAULT_BUDGET_BYTES));
+    }
+
+    /** The photo of the product with {@code gtin} once it is ready, {@code placeholder} until then. */
+    Icon icon(long gtin, Icon placeholder) {
+        return gtin > 0 ? new PhotoIcon(gtin, placeholder) : placeholder;
+    }
+
+    /** Returns the thumbnail, or null after queueing a decode that will repaint {@code requester}. */
+    private synchronized BufferedImage lookup(long gtin, Component requester) {
+        SoftReference<BufferedImage> ref = thumbnails.get(gtin);
+        BufferedImage image = ref != null ? ref.get() : null;
+        if (image != null) return image;
+        Long missingSince = missing.get(gtin);
+        if (missingSince != null) {
+            if (System.nanoTime() - missingSince < retryNanos) return null;
+            missing.remove(gtin);
+        }
+        if (ref != null) {
+            thumbnails.remove(gtin);
+            usedBytes -= bytes();
+        }
+        List<Component> waiting = pending.get(gtin);
+        if (waiting == null) {
+            waiting = new ArrayList<>(2);
+            pending.put(gtin, waiting);
+            queue.offerFirst(gtin);
+            if (queue.size() > MAX_QUEUED) {
+                // The oldest request is for a tile long scrolled away; it is queued again if it is painted again.
+                Long dropped = queue.pollLast();
+                if (dropped != null) pending.remove(dropped);
+            }
+        }
+        if (requester != null && !waiting.contains(requester)) waiting.add(requester);
+        return null;
+    }
+
+    private void work() {
+        while (true) {
+            long gtin;
+            try {
+                gtin = queue.takeFirst();
+            } catch (InterruptedException e) {
+                return;
+            }
+            BufferedImage thumbnail = null;
+            try {
+                thumbnail = thumbnail(gtin);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Unable to load the photo of " + Gtin.format(gtin) + ": " + e.getMessage());
+            }
+            List<Component> toRepaint = store(gtin, thumbnail);
+            if (!toRepaint.isEmpty()) {
+                SwingUtilities.invokeLater(() -> {
+                    for (Component c : toRepaint) {
+                        c.repaint();
+                    }
+                });
+            }
+        }
+    }
+
+    private synchronized List<Component> store(long gtin, BufferedImage thumbnail) {
+        if (thumbnail == null) {
+            missing.put(gtin, System.nanoTime());
+        } else {
+            thumbnails.put(gtin, new SoftReference<>(thumbnail));
+            usedBytes += bytes();
+            Iterator<Map.Entry<Long, SoftReference<BufferedImage>>> eldest = thumbnails.entrySet().iterator();
+            while (usedBytes > budgetBytes && eldest.hasNext()) {
+                if (eldest.next().getKey() == gtin) continue;
+                usedBytes -= bytes();
+                eldest.remove();
+            }
+        }
+        List<Component> waiting = pending.remove(gtin);
+        return waiting != null ? waiting : Collections.<Component>emptyList();
+    }
+
+    private long bytes() {
+        return (long) size * size * 4;
+    }
+
+    /** The tile-sized photo of {@code gtin} from the thumbnail cache or else decoded, or null without a photo. */
+    BufferedImage thumbnail(long gtin) throws IOException {
+        Path photo = find(gtin);
+        if (photo == null) return null;
+        String prefix = Gtin.format(gtin) + "-";
+        Path cached = cacheDir.resolve(prefix + sha256(photo) + "-" + size + ".png");
+        if (Files.isRegularFile(cached)) {
+            BufferedImage image = ImageIO.read(cached.toFile());
+            if (image != null) return image;
+        }
+        BufferedImage image = decode(photo, size);
+        Files.createDirectories(cacheDir);
+        Path temp = Files.createTempFile(cacheDir, "thumbnail", ".tmp");
+        try {
+            ImageIO.write(image, "png", temp.toFile());
+            Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        // Thumbnails of earlier versions of the photo, or of another tile size, are not read again.
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(cacheDir, prefix + "*.png")) {
+            for (Path old : stale) {
+                if (!old.equals(cached)) Files.deleteIfExists(old);
+            }
+        }
+        return image;
+    }
+
+    private Path find(long gtin) {
+        String name = Gtin.format(gtin);
+        for (String extension : EXTENSIONS) {
+            Path photo = dir.resolve(name + extension);
+            if (Files.isRegularFile(photo)) return photo;
+        }
+        return null;
+    }
+
+    static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Decodes {@code photo} fitted into a {@code size} square on white. The reader skips to every n-th pixel
+     * while decoding so that only about twice the final size is ever held, and the rest is a bilinear scale.
+     */
+    static BufferedImage decode(Path photo, int size) throws IOException {
+        long start = System.nanoTime();
+        BufferedImage source;
+        try (ImageInputStream in = ImageIO.createImageInputStream(photo.toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : Collections.emptyIterator();
+            if (!readers.hasNext()) throw new IOException("Not an image: " + photo.getFileName());
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, longest / (size * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                source = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+        double scale = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage thumbnail = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = thumbnail.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, size, size);
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(source, (size - width) / 2, (size - height) / 2, width, height, null);
+        g2.dispose();
+        KioskMetrics.PHOTO_DECODE.recordSince(start);
+        return thumbnail;
+    }
+
+    private final class PhotoIcon implements Icon {
+        private final long gtin;
+        private final Icon placeholder;
+
+        PhotoIcon(long gtin, Icon placeholder) {
+            this.gtin = gtin;
+            this.placeholder = placeholder;
+        }
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            BufferedImage image = lookup(gtin, c);
+            if (image != null) {
+                g.drawImage(image, x, y, null);
+            } else if (placeholder != null) {
+                placeholder.paintIcon(c, g, x, y);
+            }
+        }
+
+        @Override
+        public int getIconWidth() {
+            return size;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import javax.swing.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * As-you-type product name search over every category.
+ *
+ * Names are indexed by catalog id in a sorted token map (for one and two letter prefixes) and a trigram
+ * posting index (for substrings and typos). All index reads and writes happen on a single search thread,
+ * so there is no locking; every new query bumps a generation counter and older queries stop as soon as
+ * they notice they are stale. Results are delivered on the EDT.
+ *
+ * One and two letter queries match a large share of the catalog, so their results are kept until a name
+ * with a token under that prefix changes. After a catalog change {@link #update} reindexes only the
+ * names that differ.
+ */
+class ProductSearchIndex {
+    static final int MAX_RESULTS = 200;
+
+    private static final int SCORE_NAME_PREFIX = 3000;
+    private static final int SCORE_WORD_PREFIX = 2000;
+    private static final int SCORE_SUBSTRING = 1000;
+    private static final int SCORE_FUZZY = 900;
+    private static final int STALE_CHECK_INTERVAL = 1024;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "product-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong generation = new AtomicLong();
+
+    private String[] names = new String[1024];
+    private int size;
+    private final TreeMap<String, IntList> tokens = new TreeMap<>();
+    private final HashMap<Long, IntList> trigrams = new HashMap<>();
+    private final HashMap<String, int[]> shortQueries = new HashMap<>();
+
+    // Per-query scratch, only touched on the search thread.
+    private int[] counts = new int[1024];
+    private final IntList touched = new IntList();
+    private long[] heap = new long[MAX_RESULTS];
+
+    /** Indexes the whole catalog in the background. */
+    void build(CatalogStore catalog) {
+        worker.execute(() -> {
+            for (int id = 0; id < catalog.size(); id++) {
+                put(id, catalog.name(id));
+            }
+        });
+    }
+
+    /** Replaces the index with one written by {@link #export}, e.g. from the startup snapshot. */
+    void load(ByteBuffer data) {
+        worker.execute(() -> read(data.duplicate()));
+    }
+
+    /** Serializes the index once every build and update queued so far has been applied. */
+    CompletableFuture<byte[]> export() {
+        CompletableFuture<byte[]> bytes = new CompletableFuture<>();
+        worker.execute(() -> {
+            try {
+                bytes.complete(write());
+            } catch (IOException | RuntimeException e) {
+                bytes.completeExceptionally(e);
+            }
+        });
+        return bytes;
+    }
+
+    /**
+     * Brings an index built or loaded for an earlier version of the catalog up to date: renamed and new
+     * products are reindexed and products past the end of the catalog dropped. Later queries see the change.
+     */
+    void update(CatalogStore catalog) {
+        worker.execute(() -> {
+            for (int id = 0; id < catalog.size(); id++) {
+                put(id, catalog.name(id));
+            }
+            for (int id = catalog.size(); id < size; id++) {
+                remove(id);
+            }
+            size = Math.min(size, catalog.size());
+        });
+    }
+
+    /** Runs {@code query} in the background, cancelling any query still in flight. */
+    void search(String query, Consumer<int[]> onResult) {
+        long ticket = generation.incrementAndGet();
+        worker.execute(() -> {
+            if (ticket != generation.get()) return;
+            int[] result = query(query, ticket);
+            if (result != null) {
+                SwingUtilities.invokeLater(() -> {
+                    if (ticket == generation.get()) onResult.accept(result);
+                });
+            }
+        });
+    }
+
+    /** Invalidates any query still in flight, e.g. when the search box is cleared. */
+    void cancel() {
+        generation.incrementAndGet();
+    }
+
+    /** Indexes or renames one product; a rename first takes the old name's postings out. */
+    private void put(int id, String name) {
+        String normalized = normalize(name);
+        if (id >= names.length) {
+            names = Arrays.copyOf(names, Math.max(id + 1, names.length * 2));
+        }
+        String old = names[id];
+        if (normalized.equals(old)) return;
+        if (old != null) unpost(id, old);
+        names[id] = normalized;
+        size = Math.max(size, id + 1);
+
+        for (String token : normalized.split(" ")) {
+            if (token.isEmpty()) continue;
+            IntList postings = tokens.get(token);
+            if (postings == null) {
+                postings = new IntList();
+                tokens.put(token, postings);
+            }
+            postings.addUnique(id);
+            forgetShortQueries(token);
+        }
+        for (int i = 0; i + 3 <= normalized.length(); i++) {
+            Long key = trigram(normalized, i);
+            IntList postings = trigrams.get(key);
+            if (postings == null) {
+                postings = new IntList();
+                trigrams.put(key, postings);
+            }
+            postings.addUnique(id);
+        }
+    }
+
+    private void remove(int id) {
+        if (id >= names.length || names[id] == null) return;
+        unpost(id, names[id]);
+        names[id] = null;
+    }
+
+    private void unpost(int id, String normalized) {
+        for (String token : normalized.split(" ")) {
+            if (token.isEmpty()) continue;
+            IntList postings = tokens.get(token);
+            if (postings != null && postings.remove(id) && postings.size == 0) tokens.remove(token);
+            forgetShortQueries(token);
+        }
+        for (int i = 0; i + 3 <= normalized.length(); i++) {
+            Long key = trigram(normalized, i);
+            IntList postings = trigrams.get(key);
+            if (postings != null && postings.remove(id) && postings.size == 0) trigrams.remove(key);
+        }
+    }
+
+    /** Drops the kept results of the one and two letter prefixes that {@code token} is found under. */
+    private void forgetShortQueries(String token) {
+        if (shortQueries.isEmpty()) return;
+        shortQueries.remove(token.substring(0, 1));
+        if (token.length() >= 2) shortQueries.remove(token.substring(0, 2));
+    }
+
+    private byte[] write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(size);
+        for (int id = 0; id < size; id++) {
+            writeString(out, names[id]);
+        }
+        out.writeInt(tokens.size());
+        for (Map.Entry<String, IntList> token : tokens.entrySet()) {
+            writeString(out, token.getKey());
+            writePostings(out, token.getValue());
+        }
+        out.writeInt(trigrams.size());
+        for (Map.Entry<Long, IntList> trigram : trigrams.entrySet()) {
+            out.writeLong(trigram.getKey());
+            writePostings(out, trigram.getValue());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static void writePostings(DataOutputStream out, IntList postings) throws IOException {
+        out.writeInt(postings.size);
+        for (int i = 0; i < postings.size; i++) {
+            out.writeInt(postings.items[i]);
+        }
+    }
+
+    private void read(ByteBuffer in) {
+        size = in.getInt();
+        names = new String[Math.max(size, 1024)];
+        for (int id = 0; id < size; id++) {
+            names[id] = readString(in);
+        }
+        tokens.clear();
+        for (int n = in.getInt(); n > 0; n--) {
+            String token = readString(in);
+            tokens.put(token, readPostings(in));
+        }
+        trigrams.clear();
+        shortQueries.clear();
+        for (int n = in.getInt(); n > 0; n--) {
+            long key = in.getLong();
+            trigrams.put(key, readPostings(in));
+        }
+        counts = new int[names.length];
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static IntList readPostings(ByteBuffer in) {
+        IntList postings = new IntList();
+        postings.size = in.getInt();
+        postings.items = new int[Math.max(postings.size, 4)];
+        in.asIntBuffer().get(postings.items, 0, postings.size);
+        in.position(in.position() + postings.size * 4);
+        return postings;
+    }
+
+    /** Returns ids ordered best match first, or null when the query went stale. */
+    int[] query(String rawQuery, long ticket) {
+        String q = normalize(rawQuery).trim();
+        if (q.isEmpty()) return new int[0];
+        int[] kept = shortQueries.get(q);
+        if (kept != null) return kept.clone();
+        if (counts.length < size) counts = new int[names.length];
+        int found = 0;
+        try {
+            if (q.length() < 3) {
+                found = prefixCandidates(q, ticket);
+            } else {
+                found = trigramCandidates(q, ticket);
+            }
+        } finally {
+            for (int i = 0; i < touched.size; i++) {
+                counts[touched.items[i]] = 0;
+            }
+            touched.size = 0;
+        }
+        if (found < 0) return null;
+
+        // Heap holds the worst kept result at the root; drain it back-to-front for best-first order.
+        int[] result = new int[found];
+        for (int i = found - 1; i >= 0; i--) {
+            result[i] = Integer.MAX_VALUE - (int) heap[0];
+            heap[0] = heap[--found];
+            siftDown(0, found);
+        }
+        if (q.length() < 3) shortQueries.put(q, result.clone());
+        return result;
+    }
+
+    private int prefixCandidates(String q, long ticket) {
+        int found = 0;
+        int visited = 0;
+        for (IntList postings : tokens.subMap(q, true, q + Character.MAX_VALUE, false).values()) {
+            for (int i = 0; i < postings.size; i++) {
+                int id = postings.items[i];
+                if (counts[id] != 0) continue;
+                counts[id] = 1;
+                touched.add(id);
+                int score = score(names[id], q, 0, 0);
+                if (score > 0) found = offer(found, id, score);
+                if (++visited % STALE_CHECK_INTERVAL == 0 && ticket != generation.get()) return -1;
+            }
+        }
+        return found;
+    }
+
+    private int trigramCandidates(String q, long ticket) {
+        HashSet<Long> queryTrigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            queryTrigrams.add(trigram(q, i));
+        }
+
+        // Exact substring hits all contain the rarest trigram, so only that posting list needs verifying.
+        IntList rarest = null;
+        for (Long key : queryTrigrams) {
+            IntList postings = trigrams.get(key);
+            if (postings == null) {
+                rarest = null;
+                break;
+            }
+            if (rarest == null || postings.size < rarest.size) rarest = postings;
+        }
+        int found = 0;
+        int exact = 0;
+        if (rarest != null) {
+            for (int i = 0; i < rarest.size; i++) {
+                int id = rarest.items[i];
+                if (names[id].contains(q)) {
+                    found = offer(found, id, score(names[id], q, 0, 0));
+                    exact++;
+                }
+                if (i % STALE_CHECK_INTERVAL == 0 && ticket != generation.get()) return -1;
+            }
+        }
+        if (exact >= MAX_RESULTS) return found;
+
+        // Not enough exact hits: fall back to names sharing at least half of the query trigrams.
+        int visited = 0;
+        for (Long key : queryTrigrams) {
+            IntList postings = trigrams.get(key);
+            if (postings == null) continue;
+            for (int i = 0; i < postings.size; i++) {
+                int id = postings.items[i];
+                if (counts[id]++ == 0) touched.add(id);
+                if (++visited % STALE_CHECK_INTERVAL == 0 && ticket != generation.get()) return -1;
+            }
+        }
+        int needed = Math.max(1, (queryTrigrams.size() + 1) / 2);
+        for (int i = 0; i < touched.size; i++) {
+            int id = touched.items[i];
+            int shared = counts[id];
+            if (shared < needed || names[id].contains(q)) continue;
+            int score = score(names[id], q, shared, queryTrigrams.size());
+            if (score > 0) found = offer(found, id, score);
+        }
+        return found;
+    }
+
+    private static int score(String name, String q, int sharedTrigrams, int queryTrigrams) {
+        int base;
+        int at = name.indexOf(q);
+        if (at == 0) base = SCORE_NAME_PREFIX;
+        else if (at > 0 && name.charAt(at - 1) == ' ') base = SCORE_WORD_PREFIX;
+        else if (at > 0) base = SCORE_SUBSTRING;
+        else if (queryTrigrams > 0) base = SCORE_FUZZY * sharedTrigrams / queryTrigrams;
+        else return 0;
+        // Shorter names are closer matches for the same kind of hit.
+        return base - Math.min(name.length(), 255);
+    }
+
+    /** Keeps the best MAX_RESULTS in a min-heap ordered by (score, -id). */
+    private int offer(int found, int id, int score) {
+        long key = ((long) score << 32) | (Integer.MAX_VALUE - id);
+        if (found < MAX_RESULTS) {
+            heap[found] = key;
+            int i = found++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= heap[i]) break;
+                long tmp = heap[parent];
+                heap[parent] = heap[i];
+                heap[i] = tmp;
+                i = parent;
+            }
+        } else if (key > heap[0]) {
+            heap[0] = key;
+            siftDown(0, found);
+        }
+        return found;
+    }
+
+    private void siftDown(int i, int n) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < n && heap[left] < heap[smallest]) smallest = left;
+            if (right < n && heap[right] < heap[smallest]) smallest = right;
+            if (smallest == i) return;
+            long tmp = heap[smallest];
+            heap[smallest] = heap[i];
+            heap[i] = tmp;
+            i = smallest;
+        }
+    }
+
+    private static Long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    static String normalize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        boolean space = false;
+        for (int i = 0; i < name.length(); i++) {
+            char ch = Character.toLowerCase(name.charAt(i));
+            if (Character.isLetterOrDigit(ch)) {
+                sb.append(ch);
+                space = false;
+            } else if (!space && sb.length() > 0) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class IntList {
+        int[] items = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = value;
+        }
+
+        /** Inserts {@code value} in ascending order unless it is already there; appending is the common case. */
+        void addUnique(int value) {
+            if (size == 0 || items[size - 1] < value) {
+                add(value);
+                return;
+            }
+            int at = Arrays.binarySearch(items, 0, size, value);
+            if (at >= 0) return;
+            at = -at - 1;
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            System.arraycopy(items, at, items, at + 1, size - at);
+            items[at] = value;
+            size++;
+        }
+
+        boolean remove(int value) {
+            int at = Arrays.binarySearch(items, 0, size, value);
+            if (at < 0) return false;
+            System.arraycopy(items, at + 1, items, at, size - at - 1);
+            size--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Promotion rules, read from a CSV with the columns {@code rule,target,value,buy,get,rx}:
+ *
+ * <pre>
+ * # Senior/PWD: 20% off, after taking the 12% VAT out of the price
+ * seniorPwd,,20,,,
+ * vatExempt,,12,,,
+ * percentOff,category:Generic,10,,,false
+ * percentOff,product:Neozep,15,,,false
+ * # Buy 2, get 1 free
+ * buyGet,category:Branded,,2,1,false
+ * </pre>
+ *
+ * Percent-off rules stack in file order, a product's buy/get rule replaces its category's, and the last
+ * seniorPwd and vatExempt rows win. {@code rx} says whether a promotion also applies to Rx products; the
+ * Senior/PWD discount always does. The kiosk reads -Dkiosk.promotions, or the bundled promotions.csv, and
+ * recompiles the price table whenever that file changes.
+ */
+final class Promotions {
+    static final int SENIOR_PWD = 0;
+    static final int VAT_EXEMPT = 1;
+    static final int PERCENT_OFF = 2;
+    static final int BUY_GET = 3;
+
+    private static final String[] RULE_NAMES = {"seniorPwd", "vatExempt", "percentOff", "buyGet"};
+    private static final long POLL_SECONDS = 10;
+
+    static final class Rule {
+        final int type;
+        /** Target category, or -1. */
+        final int category;
+        /** Target product name, or null. */
+        final String product;
+        final int value;
+        final int buy;
+        final int get;
+        final boolean includeRx;
+
+        Rule(int type, int category, String product, int value, int buy, int get, boolean includeRx) {
+            this.type = type;
+            this.category = category;
+            this.product = product;
+            this.value = value;
+            this.buy = buy;
+            this.get = get;
+            this.includeRx = includeRx;
+        }
+    }
+
+    /** The statutory Senior/PWD rules: 20% off VAT-exempt prices, VAT being 12%. */
+    static final List<Rule> DEFAULTS = Collections.unmodifiableList(Arrays.asList(
+            new Rule(SENIOR_PWD, -1, null, 20, 0, 0, true),
+            new Rule(VAT_EXEMPT, -1, null, 12, 0, 0, true)));
+
+    private Promotions() {
+    }
+
+    static List<Rule> load() throws IOException {
+        String external = System.getProperty("kiosk.promotions");
+        if (external != null) {
+            try (BufferedReader reader = Files.newBufferedReader(Paths.get(external), StandardCharsets.UTF_8)) {
+                return parse(reader);
+            }
+        }
+        InputStream bundled = Promotions.class.getResourceAsStream("/promotions.csv");
+        if (bundled == null) return DEFAULTS;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(bundled, StandardCharsets.UTF_8))) {
+            return parse(reader);
+        }
+    }
+
+    static List<Rule> parse(BufferedReader reader) throws IOException {
+        List<Rule> rules = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#") || (lineNumber == 1 && line.startsWith("rule,"))) continue;
+            String[] fields = Arrays.copyOf(line.split(",", -1), 6);
+            int type = Arrays.asList(RULE_NAMES).indexOf(fields[0].trim());
+            if (type < 0) throw new IOException("Line " + lineNumber + ": unknown rule " + fields[0]);
+
+            int category = -1;
+            String product = null;
+            String target = fields[1] == null ? "" : fields[1].trim();
+            if (target.startsWith("category:")) {
+                category = Arrays.asList(CatalogStore.CATEGORIES).indexOf(target.substring(9).trim());
+                if (category < 0) throw new IOException("Line " + lineNumber + ": unknown category " + target);
+            } else if (target.startsWith("product:")) {
+                product = target.substring(8).trim();
+            } else if (!target.isEmpty()) {
+                throw new IOException("Line " + lineNumber + ": target must be category:NAME or product:NAME");
+            }
+            if ((type == PERCENT_OFF || type == BUY_GET) && category < 0 && product == null) {
+                throw new IOException("Line " + lineNumber + ": " + fields[0].trim() + " needs a target");
+            }
+
+            try {
+                int value = number(fields[2]);
+                int buy = number(fields[3]);
+                int get = number(fields[4]);
+                if (value < 0 || value > 100 || (type == BUY_GET && (buy <= 0 || get <= 0))) {
+                    throw new IOException("Line " + lineNumber + ": value out of range");
+                }
+                boolean includeRx = fields[5] != null && Boolean.parseBoolean(fields[5].trim());
+                rules.add(new Rule(type, category, product, value, buy, get, includeRx));
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return rules;
+    }
+
+    private static int number(String field) {
+        return field == null || field.trim().isEmpty() ? 0 : Integer.parseInt(field.trim());
+    }
+
+    /**
+     * Recompiles and installs the price table whenever the -Dkiosk.promotions file changes. Does nothing
+     * when the kiosk runs on the bundled promotions.
+     */
+    static void watch(PricingEngine pricing, CatalogStore catalog) {
+        String external = System.getProperty("kiosk.promotions");
+        if (external == null) return;
+        Path file = Paths.get(external);
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "promotions-watch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[] lastModified = {modified(file)};
+        poller.scheduleWithFixedDelay(() -> {
+            long modified = modified(file);
+            if (modified == lastModified[0]) return;
+            lastModified[0] = modified;
+            try {
+                pricing.install(PriceTable.compile(load(), catalog));
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Keeping the current promotions: " + e.getMessage());
+            }
+        }, POLL_SECONDS, POLL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static long modified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Streams a receipt straight into a reusable {@link ByteBuffer} and out to a channel, either as plain
+ * UTF-8 text (on-screen preview, log files) or as ESC/POS for thermal printers. Amounts are written digit
+ * by digit; nothing is formatted through String.format. Not thread-safe: use one writer per kiosk.
+ */
+final class ReceiptWriter {
+    enum Format { TEXT, ESC_POS }
+
+    static final int WIDTH = 42;
+
+    private static final byte ESC = 0x1B;
+    private static final byte GS = 0x1D;
+    private static final String RX_NOTICE = "Notice: For RX products, please show the doctor's prescription during payment.";
+
+    private final Format format;
+    private final ByteBuffer buffer;
+    private final PriceTable.Quote quote = new PriceTable.Quote();
+    private WritableByteChannel out;
+    private int column;
+
+    ReceiptWriter(Format format) {
+        this(format, 8192);
+    }
+
+    ReceiptWriter(Format format, int bufferSize) {
+        this.format = format;
+        this.buffer = ByteBuffer.allocate(Math.max(bufferSize, 256));
+    }
+
+    /** Opens the printer named by -Dkiosk.printer, or a local printer.out file in the data directory. */
+    static WritableByteChannel openPrinter() throws IOException {
+        String device = System.getProperty("kiosk.printer");
+        Path path = device != null ? Paths.get(device) : KioskFiles.dataDir().resolve("printer.out");
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    void write(List<CartEntry> lines, PriceTable prices, int flags, WritableByteChannel out) throws IOException {
+        this.out = out;
+        buffer.clear();
+        column = 0;
+
+        boolean escPos = format == Format.ESC_POS;
+        if (escPos) command(ESC, (byte) '@');
+        bold(true);
+        centered("Pharmacy Kiosk");
+        bold(false);
+        centered("Receipt");
+        rule();
+
+        prices.begin(quote, flags);
+        boolean hasRx = false;
+        for (int i = 0; i < lines.size(); i++) {
+            CartEntry entry = lines.get(i);
+            long unit = prices.unitPrice(entry.product, flags);
+            long subtotal = prices.addLine(quote, entry.product, entry.quantity);
+            int free = entry.quantity - prices.chargedQuantity(entry.product, entry.quantity);
+            hasRx |= entry.product.isRx;
+
+            text(entry.product.name, WIDTH);
+            newline();
+            text("  ");
+            number(entry.quantity);
+            text(" x ");
+            amount(unit);
+            padTo(WIDTH - amountWidth(subtotal));
+            amount(subtotal);
+            newline();
+            if (free > 0) {
+                text("  ");
+                text(prices.buyGetLabel(entry.product));
+                text(": ");
+                number(free);
+                text(" free");
+                newline();
+            }
+        }
+        rule();
+
+        if (quote.discount() != 0) {
+            totalLine("Subtotal", quote.listTotal);
+            if (PricingEngine.hasDiscount(flags)) {
+                text("Senior/PWD ");
+                number(prices.seniorPercent());
+                text("% off");
+                if (prices.vatExemptPercent() > 0) text(", VAT exempt");
+                newline();
+            }
+            totalLine("Savings", -quote.discount());
+        }
+        bold(true);
+        text("TOTAL ");
+        text(escPos ? "PHP" : "₱");
+        padTo(WIDTH - amountWidth(quote.total));
+        amount(quote.total);
+        newline();
+        bold(false);
+
+        if (hasRx) {
+            newline();
+            wrapped(RX_NOTICE);
+        }
+        newline();
+        if (escPos) {
+            command(ESC, (byte) 'd', (byte) 3);
+            command(GS, (byte) 'V', (byte) 66, (byte) 0);
+        }
+        flush();
+        this.out = null;
+    }
+
+    private void totalLine(String label, long cents) throws IOException {
+        text(label);
+        padTo(WIDTH - amountWidth(cents));
+        amount(cents);
+        newline();
+    }
+
+    private void centered(String s) throws IOException {
+        if (format == Format.ESC_POS) {
+            command(ESC, (byte) 'a', (byte) 1);
+            text(s, WIDTH);
+            newline();
+            command(ESC, (byte) 'a', (byte) 0);
+        } else {
+            padTo((WIDTH - Math.min(s.length(), WIDTH)) / 2);
+            text(s, WIDTH);
+            newline();
+        }
+    }
+
+    private void rule() throws IOException {
+        ensure(WIDTH + 1);
+        for (int i = 0; i < WIDTH; i++) {
+            buffer.put((byte) '-');
+        }
+        column = WIDTH;
+        newline();
+    }
+
+    private void wrapped(String message) throws IOException {
+        int start = 0;
+        while (start < message.length()) {
+            int end = Math.min(message.length(), start + WIDTH);
+            if (end < message.length()) {
+                int space = message.lastIndexOf(' ', end);
+                if (space > start) end = space;
+            }
+            text(message.substring(start, end));
+            newline();
+            start = end;
+            while (start < message.length() && message.charAt(start) == ' ') start++;
+        }
+    }
+
+    private void text(String s) throws IOException {
+        text(s, Integer.MAX_VALUE);
+    }
+
+    /** Writes at most {@code maxColumns} characters of {@code s}. */
+    private void text(String s, int maxColumns) throws IOException {
+        int n = Math.min(s.length(), maxColumns);
+        ensure(n * 3);
+        for (int i = 0; i < n; i++) {
+            char ch = s.charAt(i);
+            if (ch < 0x80) {
+                buffer.put((byte) ch);
+            } else if (format == Format.ESC_POS || Character.isSurrogate(ch)) {
+                buffer.put((byte) '?');
+            } else if (ch < 0x800) {
+                buffer.put((byte) (0xC0 | (ch >> 6)));
+                buffer.put((byte) (0x80 | (ch & 0x3F)));
+            } else {
+                buffer.put((byte) (0xE0 | (ch >> 12)));
+                buffer.put((byte) (0x80 | ((ch >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (ch & 0x3F)));
+            }
+        }
+        column += n;
+    }
+
+    private void number(long value) throws IOException {
+        ensure(20);
+        if (value < 0) {
+            buffer.put((byte) '-');
+            column++;
+            value = -value;
+        }
+        int digits = digits(value);
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+        column += digits;
+    }
+
+    private void amount(long cents) throws IOException {
+        if (cents < 0) {
+            ensure(1);
+            buffer.put((byte) '-');
+            column++;
+            cents = -cents;
+        }
+        number(cents / 100);
+        ensure(3);
+        long fraction = cents % 100;
+        buffer.put((byte) '.');
+        buffer.put((byte) ('0' + fraction / 10));
+        buffer.put((byte) ('0' + fraction % 10));
+        column += 3;
+    }
+
+    private static int amountWidth(long cents) {
+        return (cents < 0 ? 1 : 0) + digits(Math.abs(cents) / 100) + 3;
+    }
+
+    private static int digits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private void padTo(int targetColumn) throws IOException {
+        if (column >= targetColumn) {
+            if (column > 0) text(" ");
+            return;
+        }
+        ensure(targetColumn - column);
+        while (column < targetColumn) {
+            buffer.put((byte) ' ');
+            column++;
+        }
+    }
+
+    private void newline() throws IOException {
+        ensure(1);
+        buffer.put((byte) '\n');
+        column = 0;
+    }
+
+    private void bold(boolean on) throws IOException {
+        if (format == Format.ESC_POS) command(ESC, (byte) 'E', (byte) (on ? 1 : 0));
+    }
+
+    private void command(byte... bytes) throws IOException {
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+}
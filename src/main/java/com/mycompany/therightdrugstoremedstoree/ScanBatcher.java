@@ -0,0 +1,74 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Collects scans and adds them to the cart in one go: repeat scans of a product become a single quantity
+ * change, so a burst of scans costs one cart update, one journal record and one repaint per product
+ * instead of one per scan. GTINs resolve through the catalog's GTIN table.
+ *
+ * Has no Swing dependency; {@link BarcodeScanner} flushes it from a timer shortly after the first scan of
+ * a batch and toasts the result once the session has added it. Not thread-safe.
+ */
+final class ScanBatcher {
+    private final CatalogStore catalog;
+    private final CartSession session;
+    private final CartLines pending = new CartLines();
+    private long batchStart;
+
+    ScanBatcher(CatalogStore catalog, CartSession session) {
+        this.catalog = catalog;
+        this.session = session;
+    }
+
+    /** Queues one scan. Returns false, queueing nothing, when no product has this GTIN. */
+    boolean scanned(long gtin) {
+        int sku = catalog.findGtin(gtin);
+        if (sku < 0) return false;
+        if (pending.size() == 0) batchStart = System.nanoTime();
+        pending.add(sku, 1);
+        return true;
+    }
+
+    boolean isEmpty() {
+        return pending.size() == 0;
+    }
+
+    /**
+     * Adds the queued scans that are in stock to the cart, one change per product, and empties the queue.
+     * {@code onDone} runs on {@code callbacks} once every change is in, with what the batch added.
+     * Does nothing when nothing is queued.
+     */
+    void flush(Consumer<Flushed> onDone, Executor callbacks) {
+        if (pending.size() == 0) return;
+        Flushed flushed = new Flushed(pending.size());
+        long start = batchStart;
+        for (int row = 0; row < pending.size(); row++) {
+            Product product = catalog.product(pending.sku(row));
+            int scanned = pending.quantity(row);
+            session.addToCart(product, scanned, added -> {
+                if (added > 0) flushed.lastProduct = product;
+                if (added < scanned) flushed.outOfStock = product;
+                flushed.units += added;
+                if (--flushed.remaining == 0) {
+                    KioskMetrics.SCAN_TO_CART.recordSince(start);
+                    onDone.accept(flushed);
+                }
+            }, callbacks);
+        }
+        pending.clear();
+    }
+
+    /** What one {@link #flush} added to the cart. */
+    static final class Flushed {
+        private int remaining;
+        int units;
+        Product lastProduct; // the product added last, or null if nothing was
+        Product outOfStock; // a product not every scanned unit of could be added, or null
+
+        private Flushed(int products) {
+            this.remaining = products;
+        }
+    }
+}
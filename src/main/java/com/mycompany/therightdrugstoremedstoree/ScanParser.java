@@ -0,0 +1,71 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+/**
+ * Splits keystrokes into barcode scans. HID scanners type the digits of a code a few milliseconds apart
+ * and end it with Enter; people type slower. Digits are held while they could still be part of a scan and
+ * handed back through {@link Output#typed} as soon as they cannot (a slow key, another key, a code that is
+ * too short), so typing digits into the search field still works, only one key gap later.
+ *
+ * Has no Swing dependency: {@link BarcodeScanner} feeds it AWT key events and {@link KeystrokeSource}
+ * feeds it directly. Not thread-safe.
+ */
+final class ScanParser {
+    static final int MIN_DIGITS = 8;
+    static final int MAX_DIGITS = 14;
+
+    interface Output {
+        /** Keystrokes that turned out not to be a scan. {@code chars} is only valid during the call. */
+        void typed(CharSequence chars);
+
+        /** A complete code: its GTIN value, or -1 when the check digit is wrong. */
+        void scanned(long gtin);
+    }
+
+    private final Output output;
+    private final long maxGapNanos;
+    private final StringBuilder held = new StringBuilder(MAX_DIGITS);
+    private long lastNanos;
+
+    ScanParser(Output output, long maxGapNanos) {
+        this.output = output;
+        this.maxGapNanos = maxGapNanos;
+    }
+
+    /**
+     * Feeds one typed character, Enter being {@code '\n'}. Returns true when the parser took it; otherwise
+     * the caller delivers it as usual, after any held digits were handed back.
+     */
+    boolean key(char ch, long nanos) {
+        if (held.length() > 0 && nanos - lastNanos > maxGapNanos) release();
+        if (ch >= '0' && ch <= '9') {
+            if (held.length() == MAX_DIGITS) release();
+            held.append(ch);
+            lastNanos = nanos;
+            return true;
+        }
+        if (ch == '\n' && held.length() >= MIN_DIGITS) {
+            long gtin = Gtin.parse(held);
+            held.setLength(0);
+            output.scanned(gtin);
+            return true;
+        }
+        release();
+        return false;
+    }
+
+    /** Hands back held digits once the key gap has passed without a scan completing; call it from a timer. */
+    void idle(long nanos) {
+        if (held.length() > 0 && nanos - lastNanos > maxGapNanos) release();
+    }
+
+    boolean isHolding() {
+        return held.length() > 0;
+    }
+
+    /** Hands back held digits now, e.g. before a key that acts on the text they belong to. */
+    void release() {
+        if (held.length() == 0) return;
+        output.typed(held);
+        held.setLength(0);
+    }
+}
@@ -0,0 +1,216 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the kiosk otherwise rebuilds on every boot, saved next to the catalog: an atlas of rendered product
+ * icons (the first screen of every category first) and the serialized search index.
+ *
+ * The file is memory mapped. Icons are copied out of the atlas when first painted, so the first screen
+ * shows real icons instead of placeholders, and the search index is loaded on the search thread. The file
+ * is tied to the icon size and records the catalog's source stamp. After a catalog change the old snapshot
+ * is still used, read into memory so that it can be replaced: icons are keyed by what they show, and the
+ * search index is brought up to date with {@link ProductSearchIndex#update}. A missing or stale snapshot
+ * is rebuilt in the background after the first paint. The atlas is capped at -Dkiosk.snapshot.atlasBytes
+ * (8 MB by default).
+ */
+final class StartupSnapshot {
+    private static final int MAGIC = 0x4B534E50; // "KSNP"
+    private static final int VERSION = 1;
+    // magic, version, catalog stamp, icon size, icon count, index offset, index length
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4 + 4;
+    private static final long DEFAULT_ATLAS_BYTES = 8L * 1024 * 1024;
+    private static final int FIRST_SCREEN = ProductGrid.COLUMNS * 3;
+
+    private final long catalogStamp;
+    private final int iconSize;
+    private final IntBuffer pixels;
+    private final Map<IconCache.Key, Integer> atlas;
+    private final ByteBuffer searchIndex;
+
+    private StartupSnapshot(ByteBuffer buffer) throws IOException {
+        this.catalogStamp = buffer.getLong(8);
+        this.iconSize = buffer.getInt(16);
+        int icons = buffer.getInt(20);
+        int indexOffset = buffer.getInt(24);
+        int indexLength = buffer.getInt(28);
+        if (indexOffset < HEADER_SIZE || (long) indexOffset + indexLength > buffer.limit()) {
+            throw new IOException("Corrupt startup snapshot");
+        }
+
+        ByteBuffer directory = buffer.duplicate();
+        directory.position(HEADER_SIZE);
+        atlas = new HashMap<>(icons * 2);
+        for (int i = 0; i < icons; i++) {
+            int rgb = directory.getInt();
+            byte[] text = new byte[directory.getShort() & 0xFFFF];
+            directory.get(text);
+            atlas.put(new IconCache.Key(new String(text, StandardCharsets.UTF_8), rgb, iconSize), i);
+        }
+        directory.position((directory.position() + 3) & ~3);
+        this.pixels = directory.slice().asIntBuffer();
+        if ((long) pixels.capacity() < (long) icons * iconSize * iconSize) throw new IOException("Corrupt startup snapshot");
+
+        ByteBuffer index = buffer.duplicate();
+        index.position(indexOffset);
+        index.limit(indexOffset + indexLength);
+        this.searchIndex = index.slice();
+    }
+
+    private static Path path() throws IOException {
+        return KioskFiles.dataDir().resolve("startup.bin");
+    }
+
+    /**
+     * Maps the snapshot, or returns null when there is none or it was written for another icon size or
+     * format. One written for an earlier catalog is read rather than mapped; see {@link #matches}.
+     */
+    static StartupSnapshot open(CatalogStore catalog, int iconSize) {
+        try {
+            Path file = path();
+            // Check the header before mapping so that a stale file can still be replaced on every platform.
+            long stamp = stamp(file, iconSize);
+            if (stamp == -1) return null;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (stamp == catalog.sourceStamp()) {
+                    return new StartupSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+                if (channel.size() > Integer.MAX_VALUE) return null;
+                ByteBuffer copy = ByteBuffer.allocate((int) channel.size());
+                while (copy.hasRemaining()) {
+                    if (channel.read(copy) < 0) throw new EOFException("Truncated startup snapshot");
+                }
+                return new StartupSnapshot(copy.flip());
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring the startup snapshot: " + e);
+            return null;
+        }
+    }
+
+    /** The catalog stamp in the file's header, or -1 if there is no usable snapshot for {@code iconSize}. */
+    private static long stamp(Path file, int iconSize) {
+        if (!Files.exists(file)) return -1;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 32))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return -1;
+            long stamp = in.readLong();
+            return in.readInt() == iconSize ? stamp : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /** True when the snapshot was written for {@code catalog}, false for an earlier version of it. */
+    boolean matches(CatalogStore catalog) {
+        return catalogStamp == catalog.sourceStamp();
+    }
+
+    /** A copy of the pre-rendered icon, or null if the atlas does not have it. */
+    BufferedImage icon(IconCache.Key key) {
+        if (key.size != iconSize) return null;
+        Integer slot = atlas.get(key);
+        if (slot == null) return null;
+        int[] rgb = new int[iconSize * iconSize];
+        IntBuffer view = pixels.duplicate();
+        view.position(slot * rgb.length);
+        view.get(rgb);
+        BufferedImage image = new BufferedImage(iconSize, iconSize, BufferedImage.TYPE_INT_RGB);
+        image.getRaster().setDataElements(0, 0, iconSize, iconSize, rgb);
+        return image;
+    }
+
+    /** The serialized {@link ProductSearchIndex}. */
+    ByteBuffer searchIndex() {
+        return searchIndex.duplicate();
+    }
+
+    /** Builds a fresh snapshot on a background thread once the index has caught up with the catalog. */
+    static void writeInBackground(CatalogStore catalog, ProductSearchIndex index, IconCache icons, int iconSize) {
+        Thread thread = new Thread(() -> {
+            long started = System.nanoTime();
+            try {
+                byte[] indexBytes = index.export().get(5, TimeUnit.MINUTES);
+                write(path(), catalog, indexBytes, icons, iconSize);
+                KioskMetrics.SNAPSHOT_WRITE.recordSince(started);
+            } catch (Exception e) {
+                System.err.println("Unable to write the startup snapshot: " + e);
+            }
+        }, "startup-snapshot");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    static void write(Path target, CatalogStore catalog, byte[] indexBytes, IconCache icons, int iconSize)
+            throws IOException {
+        List<IconCache.Key> keys = atlasKeys(catalog, iconSize);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            int directoryBytes = 0;
+            List<byte[]> texts = new ArrayList<>(keys.size());
+            for (IconCache.Key key : keys) {
+                byte[] text = key.text.getBytes(StandardCharsets.UTF_8);
+                texts.add(text);
+                directoryBytes += 4 + 2 + text.length;
+            }
+            int pixelsOffset = (HEADER_SIZE + directoryBytes + 3) & ~3;
+            long indexOffset = pixelsOffset + (long) keys.size() * iconSize * iconSize * 4;
+            if (indexOffset + indexBytes.length > Integer.MAX_VALUE) throw new IOException("Startup snapshot too large");
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(catalog.sourceStamp());
+            out.writeInt(iconSize);
+            out.writeInt(keys.size());
+            out.writeInt((int) indexOffset);
+            out.writeInt(indexBytes.length);
+            for (int i = 0; i < keys.size(); i++) {
+                out.writeInt(keys.get(i).rgb);
+                out.writeShort(texts.get(i).length);
+                out.write(texts.get(i));
+            }
+            while (out.size() < pixelsOffset) {
+                out.writeByte(0);
+            }
+            int[] rgb = new int[iconSize * iconSize];
+            for (IconCache.Key key : keys) {
+                icons.render(key).getRaster().getDataElements(0, 0, iconSize, iconSize, rgb);
+                for (int pixel : rgb) {
+                    out.writeInt(pixel);
+                }
+            }
+            out.write(indexBytes);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Distinct icons of each category's first screen, then the rest of the catalog until the budget runs out. */
+    private static List<IconCache.Key> atlasKeys(CatalogStore catalog, int iconSize) {
+        long budget = Long.getLong("kiosk.snapshot.atlasBytes", DEFAULT_ATLAS_BYTES);
+        int max = (int) Math.min(Integer.MAX_VALUE, budget / ((long) iconSize * iconSize * 4));
+        LinkedHashSet<IconCache.Key> keys = new LinkedHashSet<>();
+        for (int c = 0; c < CatalogStore.CATEGORIES.length && keys.size() < max; c++) {
+            int start = catalog.categoryStart(c);
+            int end = start + Math.min(FIRST_SCREEN, catalog.category(c).size());
+            for (int id = start; id < end && keys.size() < max; id++) {
+                keys.add(key(catalog, id, iconSize));
+            }
+        }
+        for (int id = 0; id < catalog.size() && keys.size() < max; id++) {
+            keys.add(key(catalog, id, iconSize));
+        }
+        return new ArrayList<>(keys);
+    }
+
+    private static IconCache.Key key(CatalogStore catalog, int id, int iconSize) {
+        return new IconCache.Key(catalog.iconText(id), new java.awt.Color(catalog.iconColor(id)).getRGB(), iconSize);
+    }
+}
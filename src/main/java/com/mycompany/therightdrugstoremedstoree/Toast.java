@@ -0,0 +1,45 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import javax.swing.*;
+import javax.swing.border.CompoundBorder;
+import javax.swing.border.EmptyBorder;
+import javax.swing.border.LineBorder;
+import java.awt.*;
+
+/** Non-blocking notification shown near the bottom of a frame for a couple of seconds. */
+class Toast {
+    private static final int VISIBLE_MILLIS = 2000;
+    private static final Font FONT = new Font("Segoe UI", Font.BOLD, 16);
+
+    private final JFrame owner;
+    private final JWindow window;
+    private final JLabel label = new JLabel("", SwingConstants.CENTER);
+    private final Timer hideTimer;
+
+    Toast(JFrame owner) {
+        this.owner = owner;
+        window = new JWindow(owner);
+        window.setFocusableWindowState(false);
+        label.setFont(FONT);
+        label.setForeground(Color.WHITE);
+        label.setOpaque(true);
+        label.setBackground(new Color(0x333333));
+        label.setBorder(new CompoundBorder(new LineBorder(new Color(0x222222), 1, true), new EmptyBorder(10, 20, 10, 20)));
+        window.setContentPane(label);
+        hideTimer = new Timer(VISIBLE_MILLIS, e -> window.setVisible(false));
+        hideTimer.setRepeats(false);
+    }
+
+    /** Shows {@code message}, replacing whatever toast is currently visible. */
+    void show(String message) {
+        label.setText(message);
+        window.pack();
+        if (owner.isShowing()) {
+            Point origin = owner.getLocationOnScreen();
+            window.setLocation(origin.x + (owner.getWidth() - window.getWidth()) / 2,
+                    origin.y + owner.getHeight() - window.getHeight() - 90);
+        }
+        window.setVisible(true);
+        hideTimer.restart();
+    }
+}
@@ -0,0 +1,149 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartLinesTest {
+    // A new CartLines has 32 slots until it holds 16 lines.
+    private static final int MASK = 31;
+
+    @Test
+    void collidingSkusProbeAcrossTheEndOfTheTable() {
+        int[] skus = colliding(MASK, 6);
+        CartLines lines = new CartLines();
+        for (int sku : skus) {
+            lines.add(sku, 1);
+        }
+        for (int i = 0; i < skus.length; i++) {
+            assertEquals(i, lines.row(skus[i]));
+        }
+        assertEquals(-1, lines.row(colliding(MASK, 7)[6]));
+        assertEquals(0, lines.add(skus[0], 2));
+        assertEquals(3, lines.quantity(0));
+    }
+
+    @Test
+    void removingFromTheMiddleOfAProbeRunKeepsTheRestReachable() {
+        int[] skus = colliding(MASK, 7);
+        CartLines lines = new CartLines();
+        for (int i = 0; i < 6; i++) {
+            lines.add(skus[i], i + 1);
+        }
+        lines.removeRow(2);
+
+        assertEquals(-1, lines.row(skus[2]));
+        int[] left = {skus[0], skus[1], skus[3], skus[4], skus[5]};
+        for (int row = 0; row < left.length; row++) {
+            assertEquals(row, lines.row(left[row]));
+            assertEquals(left[row], lines.sku(row));
+        }
+        assertEquals(5, lines.add(skus[6], 1));
+        assertEquals(5, lines.row(skus[6]));
+    }
+
+    @Test
+    void removalKeepsTheOrderLinesWereAddedIn() {
+        CartLines lines = new CartLines();
+        for (int sku = 1; sku <= 10; sku++) {
+            lines.add(sku, sku);
+        }
+        lines.removeRow(0);
+        lines.removeRow(4);
+        lines.set(10, 0);
+
+        assertArrayEquals(new int[] {2, 3, 4, 5, 7, 8, 9}, skus(lines));
+        for (int row = 0; row < lines.size(); row++) {
+            assertEquals(lines.sku(row), lines.quantity(row));
+            assertEquals(row, lines.row(lines.sku(row)));
+        }
+    }
+
+    @Test
+    void randomChangesMatchALinkedHashMap() {
+        Random random = new Random(13);
+        CartLines lines = new CartLines();
+        Map<Integer, Integer> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            int sku = random.nextInt(300);
+            int op = random.nextInt(10);
+            if (op < 5) {
+                lines.add(sku, 1);
+                expected.merge(sku, 1, Integer::sum);
+            } else if (op < 9) {
+                lines.set(sku, 0);
+                expected.remove(sku);
+            } else {
+                lines.clear();
+                expected.clear();
+            }
+        }
+        assertEquals(expected.size(), lines.size());
+        int row = 0;
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getKey(), lines.sku(row));
+            assertEquals(entry.getValue(), lines.quantity(row));
+            assertEquals(row, lines.row(entry.getKey()));
+            row++;
+        }
+        for (int sku = 0; sku < 300; sku++) {
+            if (!expected.containsKey(sku)) assertEquals(-1, lines.row(sku));
+        }
+    }
+
+    @Test
+    void snapshotRestoresTheSameLinesInOrder() {
+        CartLines lines = new CartLines();
+        lines.add(500_000, 3);
+        lines.add(7, 1);
+        lines.add(128, 200);
+        lines.add(9, 4);
+        lines.removeRow(1);
+
+        CartLines restored = new CartLines();
+        restored.add(1, 1);
+        restored.restore(lines.snapshot());
+        assertArrayEquals(new int[] {500_000, 128, 9}, skus(restored));
+        assertEquals(200, restored.quantity(restored.row(128)));
+        assertEquals(-1, restored.row(1));
+
+        restored.restore(new CartLines().snapshot());
+        assertEquals(0, restored.size());
+    }
+
+    @Test
+    void malformedSnapshotsAreRejected() {
+        CartLines lines = new CartLines();
+        lines.add(300, 2);
+        byte[] snapshot = lines.snapshot();
+
+        assertThrows(IllegalArgumentException.class, () -> lines.restore(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> lines.restore(new byte[] {99, 0}));
+        byte[] truncated = Arrays.copyOf(snapshot, snapshot.length - 1);
+        assertThrows(IllegalArgumentException.class, () -> lines.restore(truncated));
+    }
+
+    /** The first {@code count} non-negative skus whose home slot is {@code home}. */
+    private static int[] colliding(int home, int count) {
+        List<Integer> found = new ArrayList<>();
+        for (int sku = 0; found.size() < count; sku++) {
+            if ((CartLines.hash(sku) & MASK) == home) found.add(sku);
+        }
+        return found.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] skus(CartLines lines) {
+        int[] skus = new int[lines.size()];
+        for (int row = 0; row < skus.length; row++) {
+            skus[row] = lines.sku(row);
+        }
+        return skus;
+    }
+}
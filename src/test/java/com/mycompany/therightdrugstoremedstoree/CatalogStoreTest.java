@@ -0,0 +1,114 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A generated 1M-row catalog, headless: every row is there, reads go to the mapped file and only products
+ * that are asked for become objects. CatalogBenchmark times opening it.
+ */
+class CatalogStoreTest {
+    private static final int ROWS = 1_000_000;
+    /** The one row priced at 99,999.99, so its price is easy to find in the file. */
+    private static final int MARKED = 123_456;
+    private static final long MARKED_PRICE = 9_999_999;
+
+    @TempDir
+    static Path dir;
+    private static Path file;
+
+    @BeforeAll
+    static void importCatalog() throws IOException {
+        Path csv = dir.resolve("catalog.csv");
+        try (BufferedWriter out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            out.write("name,price,category,rx,icon,color\n");
+            for (int i = 0; i < ROWS; i++) {
+                int category = i % CatalogStore.CATEGORIES.length;
+                String price = i == MARKED ? "99999.99" : (i % 5000) + ".25";
+                out.write("Product " + i + "," + price + "," + CatalogStore.CATEGORIES[category] + ","
+                        + (category == CatalogStore.RX) + ",P,1E90FF\n");
+            }
+        }
+        file = dir.resolve("catalog.bin");
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            assertEquals(ROWS, CatalogStore.importCsv(reader, 1, file));
+        }
+    }
+
+    @Test
+    void opensMillionRowCatalogWithoutLoadingIt() throws IOException {
+        try (CatalogStore catalog = CatalogStore.open(file, (text, color) -> null)) {
+            assertEquals(ROWS, catalog.size());
+            assertEquals(1, catalog.sourceStamp());
+            int[] expected = {ROWS / 3 + 1, ROWS / 3, ROWS / 3};
+            int start = 0;
+            for (int c = 0; c < CatalogStore.CATEGORIES.length; c++) {
+                assertEquals(start, catalog.categoryStart(c));
+                assertEquals(expected[c], catalog.category(c).size());
+                start += expected[c];
+            }
+            assertEquals(0, catalog.materializedCount(), "opening reads only the header");
+
+            int rx = catalog.categoryStart(CatalogStore.RX);
+            int marked = -1;
+            for (int id = 0; id < ROWS; id++) {
+                if (catalog.priceCents(id) == MARKED_PRICE) marked = id;
+            }
+            assertTrue(catalog.isRx(rx));
+            assertTrue(catalog.name(rx).startsWith("Product "));
+            assertEquals(CatalogStore.RX, catalog.categoryOf(rx));
+            assertEquals("Product " + MARKED, catalog.name(marked));
+            assertEquals(0, catalog.materializedCount(), "column reads do not create products");
+
+            Product product = catalog.category(CatalogStore.RX).get(0);
+            assertEquals(rx, product.sku);
+            assertTrue(product.isRx);
+            assertSame(product, catalog.product(rx));
+            assertEquals(1, catalog.materializedCount());
+            for (int id = 0; id < 1000; id++) {
+                catalog.product(id);
+            }
+            assertEquals(512, catalog.materializedCount(), "materialized products are a bounded cache");
+        }
+    }
+
+    @Test
+    void readsGoThroughTheMappedFile() throws IOException {
+        try (CatalogStore catalog = CatalogStore.open(file, (text, color) -> null)) {
+            int marked = -1;
+            for (int id = 0; id < ROWS && marked < 0; id++) {
+                if (catalog.name(id).equals("Product " + MARKED)) marked = id;
+            }
+            assertEquals(MARKED_PRICE, catalog.priceCents(marked));
+
+            // Change the price in the file underneath the open store; a heap copy would not see it.
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int offset = -1;
+                for (int i = 0; i + 8 <= bytes.limit(); i++) {
+                    if (bytes.getLong(i) == MARKED_PRICE) {
+                        assertEquals(-1, offset, "the marked price is unique in the file");
+                        offset = i;
+                    }
+                }
+                channel.write(ByteBuffer.allocate(8).putLong(0, 42), offset);
+                assertEquals(42, catalog.priceCents(marked));
+                channel.write(ByteBuffer.allocate(8).putLong(0, MARKED_PRICE), offset);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderJournalTest {
+    private static final long STAMP = 42;
+    private static final long SEGMENT_BYTES = 1L << 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayRestoresCartFlagsAndOrders() throws IOException {
+        try (OrderJournal journal = OrderJournal.open(dir, STAMP, SEGMENT_BYTES)) {
+            journal.cartLine(3, 2);
+            journal.cartLine(7, 5);
+            journal.cartFlags(PricingEngine.SENIOR);
+            long number = journal.nextOrderNumber();
+            journal.order(number, List.of(new CartEntry(product(7), 4)), PriceTable.DEFAULT, PricingEngine.SENIOR).join();
+        }
+
+        try (OrderJournal journal = OrderJournal.open(dir, STAMP, SEGMENT_BYTES)) {
+            OrderJournal.Recovery recovery = journal.recovery();
+            assertEquals(2, recovery.cart.size());
+            assertEquals(2, recovery.cart.quantity(recovery.cart.row(3)));
+            assertEquals(1, recovery.cart.quantity(recovery.cart.row(7)), "the order takes its units out of the cart");
+            assertEquals(PricingEngine.SENIOR, recovery.cartFlags);
+            assertEquals(1, recovery.orders);
+            assertEquals(1, recovery.lastOrderNumber);
+            assertEquals(4, recovery.sold.quantity(recovery.sold.row(7)));
+            assertEquals(2, journal.nextOrderNumber());
+        }
+    }
+
+    @Test
+    void newCatalogDropsCartAndSoldUnits() throws IOException {
+        try (OrderJournal journal = OrderJournal.open(dir, STAMP, SEGMENT_BYTES)) {
+            journal.cartLine(3, 2);
+            journal.order(journal.nextOrderNumber(), List.of(new CartEntry(product(3), 1)), PriceTable.DEFAULT, 0).join();
+        }
+
+        try (OrderJournal journal = OrderJournal.open(dir, STAMP + 1, SEGMENT_BYTES)) {
+            OrderJournal.Recovery recovery = journal.recovery();
+            assertEquals(0, recovery.cart.size());
+            assertEquals(0, recovery.sold.size());
+            assertEquals(1, recovery.lastOrderNumber, "order numbers keep counting across catalogs");
+        }
+    }
+
+    @Test
+    void tornTailIsTruncatedAndLaterRecordsSurvive() throws IOException {
+        try (OrderJournal journal = OrderJournal.open(dir, STAMP, SEGMENT_BYTES)) {
+            journal.cartLine(1, 1).join();
+        }
+        Path last = segments().get(segments().size() - 1);
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            // A frame header promising more payload than was written, as a crash mid-write leaves it.
+            channel.write(ByteBuffer.allocate(12).putInt(100).putInt(0).putInt(0).flip());
+        }
+
+        try (OrderJournal journal = OrderJournal.open(dir, STAMP, SEGMENT_BYTES)) {
+            assertEquals(12, journal.recovery().truncatedBytes);
+            assertEquals(1, journal.recovery().cart.size());
+            journal.cartLine(2, 1).join();
+        }
+        try (OrderJournal journal = OrderJournal.open(dir, STAMP, SEGMENT_BYTES)) {
+            assertEquals(0, journal.recovery().truncatedBytes);
+            assertEquals(2, journal.recovery().cart.size());
+        }
+    }
+
+    @Test
+    void rolloverCheckpointsAndDeletesCoveredSegments() throws IOException {
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        try (OrderJournal journal = OrderJournal.open(dir, STAMP, 4096)) {
+            for (int i = 0; i < 2000; i++) {
+                writes.add(journal.cartLine(i % 50, 1 + i % 7));
+                if (i % 100 == 99) writes.get(writes.size() - 1).join(); // several batches, so several rollovers
+            }
+            writes.add(journal.order(journal.nextOrderNumber(), List.of(new CartEntry(product(10), 1)),
+                    PriceTable.DEFAULT, 0));
+        }
+        for (CompletableFuture<Void> write : writes) {
+            write.join();
+        }
+        assertTrue(Files.exists(dir.resolve("checkpoint.bin")));
+        assertTrue(segments().size() <= 2, "covered segments are deleted: " + segments());
+
+        try (OrderJournal journal = OrderJournal.open(dir, STAMP, 4096)) {
+            OrderJournal.Recovery recovery = journal.recovery();
+            assertEquals(49, recovery.cart.size());
+            // Sku 10 was last set at i = 1960, to 1 + 1960 % 7 = 1, and the order took that unit.
+            assertEquals(-1, recovery.cart.row(10));
+            assertEquals(1 + 1999 % 7, recovery.cart.quantity(recovery.cart.row(1999 % 50)));
+            assertEquals(1, recovery.orders);
+            assertEquals(1, recovery.sold.quantity(recovery.sold.row(10)));
+        }
+        assertEquals(1, segments().size(), "opening checkpoints everything replayed");
+    }
+
+    @Test
+    void secondOpenOfTheSameDirectoryFails() throws IOException {
+        try (OrderJournal journal = OrderJournal.open(dir, STAMP, SEGMENT_BYTES)) {
+            journal.cartLine(1, 1).join();
+            IOException e = assertThrows(IOException.class, () -> OrderJournal.open(dir, STAMP, SEGMENT_BYTES));
+            assertTrue(e.getMessage().contains("in use"));
+        }
+        try (OrderJournal journal = OrderJournal.open(dir, STAMP, SEGMENT_BYTES)) {
+            assertEquals(1, journal.recovery().cart.size());
+        }
+    }
+
+    @Test
+    void appendsAfterCloseFail() throws IOException {
+        OrderJournal journal = OrderJournal.open(dir, STAMP, SEGMENT_BYTES);
+        CompletableFuture<Void> written = journal.cartLine(1, 1);
+        journal.close();
+        assertTrue(written.isDone() && !written.isCompletedExceptionally());
+        CompletionException e = assertThrows(CompletionException.class, () -> journal.cartClear().join());
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("journal-"))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static Product product(int sku) {
+        return new Product(sku, "Product " + sku, 10_000, null, false, CatalogStore.GENERIC);
+    }
+}
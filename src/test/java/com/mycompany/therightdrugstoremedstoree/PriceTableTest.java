@@ -0,0 +1,155 @@
+package com.mycompany.therightdrugstoremedstoree;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Centavo totals as the receipt shows them, worked out by hand for a small catalog. */
+class PriceTableTest {
+    private static final String PROMOTIONS = "rule,target,value,buy,get,rx\n"
+            + "seniorPwd,,20,,,\n"
+            + "vatExempt,,12,,,\n"
+            + "percentOff,category:Generic,10,,,false\n"
+            + "percentOff,product:Neozep,15,,,false\n"
+            + "buyGet,category:Branded,,2,1,false\n";
+
+    private static final String CATALOG = "name,price,category,rx,icon,color\n"
+            + "Biogesic,7.50,Branded,false,B,1E90FF\n"
+            + "Neozep,123.45,Generic,false,N,1E90FF\n"
+            + "Amoxicillin,100.00,Generic,true,A,1E90FF\n"
+            + "Vitamin C,0.14,Branded,false,V,1E90FF\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void seniorPwdPricesAreVatExemptThenDiscountedRoundingHalfUp() {
+        PriceTable table = PriceTable.DEFAULT;
+        for (long list = 0; list <= 100_000; list++) {
+            Product product = new Product(-1, "P", list, null, false, CatalogStore.GENERIC);
+            BigDecimal exVat = BigDecimal.valueOf(list).divide(new BigDecimal("1.12"), 0, RoundingMode.HALF_UP);
+            BigDecimal off = exVat.multiply(new BigDecimal("0.20")).setScale(0, RoundingMode.HALF_UP);
+            assertEquals(list, table.unitPrice(product, 0));
+            assertEquals(exVat.subtract(off).longValueExact(), table.unitPrice(product, PricingEngine.SENIOR),
+                    "list price " + list);
+        }
+    }
+
+    @Test
+    void seniorAndPwdDoNotStack() {
+        Product product = new Product(-1, "P", 10_000, null, true, CatalogStore.RX);
+        PriceTable table = PriceTable.DEFAULT;
+        assertEquals(7143, table.unitPrice(product, PricingEngine.SENIOR));
+        assertEquals(7143, table.unitPrice(product, PricingEngine.PWD));
+        assertEquals(7143, table.unitPrice(product, PricingEngine.SENIOR | PricingEngine.PWD));
+    }
+
+    @Test
+    void lineTotalsApplyPromotionsBuyGetAndSeniorPwd() throws IOException {
+        try (CatalogStore catalog = catalog()) {
+            PriceTable table = table(catalog);
+            // 7.50; buy 2 get 1 charges 5 of 7. Senior: 7.50 / 1.12 = 6.70, less 1.34.
+            assertLine(table, catalog, "Biogesic", 7, 750, 3750, 536, 2680);
+            // 123.45 less 10% and 15% (76.5% kept) = 94.44. Senior: 94.44 / 1.12 = 84.32, less 16.86.
+            assertLine(table, catalog, "Neozep", 2, 9444, 18888, 6746, 13492);
+            // Store promotions skip Rx; Senior/PWD does not. 100.00 / 1.12 = 89.29, less 17.86.
+            assertLine(table, catalog, "Amoxicillin", 3, 10000, 30000, 7143, 21429);
+            // 0.14 / 1.12 = 0.125 rounds up to 0.13, less 0.026 rounded to 0.03.
+            assertLine(table, catalog, "Vitamin C", 1, 14, 14, 10, 10);
+        }
+    }
+
+    @Test
+    void repriceBatchMatchesTheLineTotals() throws IOException {
+        try (CatalogStore catalog = catalog()) {
+            PriceTable table = table(catalog);
+            int[] cart = {sku(catalog, "Biogesic"), sku(catalog, "Neozep"), sku(catalog, "Amoxicillin"),
+                    sku(catalog, "Vitamin C")};
+            int[] quantities = {7, 2, 3, 1};
+            int[] skus = new int[cart.length * 2];
+            int[] allQuantities = new int[cart.length * 2];
+            for (int c = 0; c < 2; c++) {
+                System.arraycopy(cart, 0, skus, c * cart.length, cart.length);
+                System.arraycopy(quantities, 0, allQuantities, c * cart.length, cart.length);
+            }
+            int[] offsets = {0, cart.length, cart.length * 2, cart.length * 2};
+            int[] flags = {0, PricingEngine.SENIOR, PricingEngine.PWD};
+            long[] totals = new long[3];
+
+            table.repriceBatch(skus, allQuantities, offsets, flags, 3, totals);
+
+            assertArrayEquals(new long[] {52_652, 37_611, 0}, totals);
+        }
+    }
+
+    @Test
+    void receiptTotalIsTheSumOfItsLines() throws IOException {
+        try (CatalogStore catalog = catalog()) {
+            PriceTable table = table(catalog);
+            List<CartEntry> lines = Arrays.asList(
+                    new CartEntry(catalog.product(sku(catalog, "Biogesic")), 7),
+                    new CartEntry(catalog.product(sku(catalog, "Neozep")), 2),
+                    new CartEntry(catalog.product(sku(catalog, "Amoxicillin")), 3),
+                    new CartEntry(catalog.product(sku(catalog, "Vitamin C")), 1));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            new ReceiptWriter(ReceiptWriter.Format.TEXT).write(lines, table, PricingEngine.PWD, Channels.newChannel(out));
+
+            String receipt = out.toString(StandardCharsets.UTF_8);
+            for (String line : new String[] {"7 x 5.36", "2 x 67.46", "3 x 71.43", "1 x 0.10"}) {
+                assertTrue(receipt.contains(line), receipt);
+            }
+            // The subtotal is at list prices: 7 x 7.50 + 2 x 123.45 + 3 x 100.00 + 0.14.
+            assertTrue(receipt.matches("(?s).*\nSubtotal +599\\.54\n.*"), receipt);
+            assertTrue(receipt.matches("(?s).*\nSavings +-223\\.43\n.*"), receipt);
+            assertTrue(receipt.matches("(?s).*\nTOTAL \\S+ +376\\.11\n.*"), receipt);
+        }
+    }
+
+    private static void assertLine(PriceTable table, CatalogStore catalog, String name, int quantity,
+                                   long unit, long line, long seniorUnit, long seniorLine) {
+        Product product = catalog.product(sku(catalog, name));
+        assertEquals(unit, table.unitPrice(product, 0), name);
+        assertEquals(line, table.lineTotal(product, quantity, 0), name);
+        assertEquals(seniorUnit, table.unitPrice(product, PricingEngine.SENIOR), name);
+        assertEquals(seniorLine, table.lineTotal(product, quantity, PricingEngine.SENIOR), name);
+    }
+
+    private CatalogStore catalog() throws IOException {
+        Path file = dir.resolve("catalog.bin");
+        CatalogStore.importCsv(new BufferedReader(new StringReader(CATALOG)), 1, file);
+        return CatalogStore.open(file, (text, color) -> null);
+    }
+
+    private static PriceTable table(CatalogStore catalog) {
+        return PriceTable.compile(promotions(), catalog);
+    }
+
+    private static List<Promotions.Rule> promotions() {
+        try {
+            return Promotions.parse(new BufferedReader(new StringReader(PROMOTIONS)));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static int sku(CatalogStore catalog, String name) {
+        for (int sku = 0; sku < catalog.size(); sku++) {
+            if (catalog.name(sku).equals(name)) return sku;
+        }
+        throw new AssertionError("No product " + name);
+    }
+}